@@ -0,0 +1,43 @@
+package springboot.belzedev.it.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import springboot.belzedev.it.utils.EmailValidator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validazione dell'email con la regex precompilata di {@link EmailValidator},
+ * confrontata con {@code String.matches}, che ricompila la regex a ogni chiamata.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailValidationBenchmark {
+
+	private static final String EMAIL_REGEX = "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$";
+
+	@Param({"player.one@example.com", "not-an-email"})
+	public String email;
+
+	@Benchmark
+	public boolean precompiledPattern() {
+		return EmailValidator.isValid(email);
+	}
+
+	@Benchmark
+	public boolean stringMatches() {
+		return email.matches(EMAIL_REGEX);
+	}
+}
@@ -0,0 +1,117 @@
+package springboot.belzedev.it.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+import springboot.belzedev.it.repository.TokenRevocationRepository;
+import springboot.belzedev.it.security.JwtKeyring;
+import springboot.belzedev.it.security.JwtRequestFilter;
+import springboot.belzedev.it.services.TokenRevocationService;
+import springboot.belzedev.it.utils.JwtUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generazione e verifica dei token JWT e passaggio completo di {@link JwtRequestFilter}.
+ * La verifica viene misurata sia con il token in cache sia con la cache sempre mancata,
+ * per separare il costo della firma HMAC da quello della cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+	// Numero di token distinti usati per mancare sempre la cache
+	private static final int TOKEN_COUNT = 1024;
+
+	private JwtUtil jwtUtil;
+	private JwtUtil uncachedJwtUtil;
+	private JwtRequestFilter filter;
+
+	private String token;
+	private String[] uncachedTokens;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		// Portachiavi in un file temporaneo, condiviso dalle due istanze
+		JwtKeyring keyring = new JwtKeyring(Files.createTempDirectory("jwt-benchmark").resolve("keyring.txt").toString(),
+				Duration.ofHours(24), Duration.ZERO, Duration.ofHours(10), 60_000);
+		jwtUtil = new JwtUtil(10_000, Duration.ofHours(10), keyring);
+		token = jwtUtil.generateToken("benchmark", 1L);
+		jwtUtil.verifyToken(token);
+
+		// Cache da una sola voce, scorsa a rotazione su molti token: ogni verifica controlla la firma
+		uncachedJwtUtil = new JwtUtil(1, Duration.ofHours(10), keyring);
+		uncachedTokens = new String[TOKEN_COUNT];
+		for(int i = 0; i < TOKEN_COUNT; i++){
+			uncachedTokens[i] = uncachedJwtUtil.generateToken("user" + i, (long) i);
+		}
+
+		// Repository fittizio: il principal viene costruito in memoria, senza database
+		UserDetails principal = new User("benchmark", "{noop}unused", List.of());
+		UserDetailsService userDetailsService = username -> principal;
+		filter = new JwtRequestFilter();
+		ReflectionTestUtils.setField(filter, "jwtUtil", jwtUtil);
+		ReflectionTestUtils.setField(filter, "userDetailsService", userDetailsService);
+		ReflectionTestUtils.setField(filter, "meterRegistry", new SimpleMeterRegistry());
+		// Revoche solo in memoria: il repository non viene usato dal controllo sul percorso della richiesta
+		ReflectionTestUtils.setField(filter, "revocationService", new TokenRevocationService(
+				Mockito.mock(TokenRevocationRepository.class), jwtUtil, Duration.ofMinutes(1), 1000, Duration.ofMinutes(2), new SimpleMeterRegistry()));
+	}
+
+	@Benchmark
+	public String generateToken() {
+		return jwtUtil.generateToken("benchmark", 1L);
+	}
+
+	@Benchmark
+	public Object verifyCachedToken() {
+		return jwtUtil.verifyToken(token);
+	}
+
+	@Benchmark
+	public Object verifyUncachedToken() {
+		next = (next + 1) & (TOKEN_COUNT - 1);
+		return uncachedJwtUtil.verifyToken(uncachedTokens[next]);
+	}
+
+	@Benchmark
+	public Object filterPass() throws ServletException, IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+		request.addHeader("Authorization", "Bearer " + token);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try{
+			filter.doFilter(request, response, new MockFilterChain());
+			return SecurityContextHolder.getContext().getAuthentication();
+		}
+		finally {
+			SecurityContextHolder.clearContext();
+		}
+	}
+}
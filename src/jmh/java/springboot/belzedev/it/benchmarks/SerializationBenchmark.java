@@ -0,0 +1,61 @@
+package springboot.belzedev.it.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import springboot.belzedev.it.dto.ApiResponse;
+import springboot.belzedev.it.dto.UserSummary;
+import springboot.belzedev.it.models.User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializzazione Jackson delle risposte più frequenti: {@link ApiResponse} (login e registrazione),
+ * l'entità {@link User} e la proiezione {@link UserSummary} usata negli elenchi.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private ObjectMapper objectMapper;
+	private ApiResponse apiResponse;
+	private User user;
+	private UserSummary userSummary;
+
+	@Setup
+	public void setUp() {
+		objectMapper = new ObjectMapper();
+		apiResponse = new ApiResponse("eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiJiZW5jaG1hcmsifQ.signature", true);
+		user = new User(1L, "player.one@example.com", "playerOne",
+				"$2a$10$abcdefghijklmnopqrstuuZ1y6eI0uQeB3t8x8eQ9cJ2m9V6lWm7e", true, false, "en");
+		userSummary = new UserSummary(1L, "player.one@example.com", "playerOne", true, false, "en", 0L);
+	}
+
+	@Benchmark
+	public byte[] apiResponse() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(apiResponse);
+	}
+
+	@Benchmark
+	public byte[] userEntity() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(user);
+	}
+
+	@Benchmark
+	public byte[] userSummary() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(userSummary);
+	}
+}
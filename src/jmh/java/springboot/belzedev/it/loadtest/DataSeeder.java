@@ -0,0 +1,74 @@
+package springboot.belzedev.it.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import springboot.belzedev.it.services.UserAvailabilityIndex;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Popola il database del profilo {@code perf} con gli utenti e i token di verifica usati dal load test,
+ * con insert JDBC in batch. Tutti gli utenti condividono lo stesso hash BCrypt (calcolato una volta
+ * con la strength calibrata dall'istanza), perché criptare milioni di password richiederebbe ore.
+ * Se la tabella {@code users} contiene già delle righe non viene generato nulla.
+ */
+final class DataSeeder {
+
+	private static final Logger log = LoggerFactory.getLogger(DataSeeder.class);
+
+	private static final int BATCH_SIZE = 10_000;
+
+	private static final String INSERT_USER =
+			"insert into users(id_user, email, username, psw, verified, theme, lang, version) values (?, ?, ?, ?, ?, ?, ?, 0)";
+
+	private static final String INSERT_TOKEN =
+			"insert into verification_tokens(token, id_user, expiry_date) values (?, ?, ?)";
+
+	private DataSeeder() {}
+
+	/**
+	 * @param context il contesto dell'istanza avviata con il profilo {@code perf}
+	 * @param users il numero di utenti da generare
+	 */
+	static void seed(ApplicationContext context, long users) {
+		JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+		Long existing = jdbcTemplate.queryForObject("select count(*) from users", Long.class);
+		if(existing != null && existing > 0){
+			log.info("Database già popolato ({} utenti): generazione saltata", existing);
+			return;
+		}
+		String hash = context.getBean(BCryptPasswordEncoder.class).encode(LoadTestData.PASSWORD);
+		LocalDateTime tokenExpiry = LocalDateTime.now().plusDays(7);
+		long start = System.nanoTime();
+		List<Object[]> userRows = new ArrayList<>(BATCH_SIZE);
+		List<Object[]> tokenRows = new ArrayList<>(BATCH_SIZE);
+		for(long from = 0; from < users; from += BATCH_SIZE){
+			long to = Math.min(users, from + BATCH_SIZE);
+			for(long n = from; n < to; n++){
+				long id = LoadTestData.id(n);
+				userRows.add(new Object[]{id, LoadTestData.email(n), LoadTestData.username(n), hash,
+						!LoadTestData.unverified(n), n % 3 == 0, n % 5 == 0 ? "it" : "en"});
+				if(LoadTestData.unverified(n)){
+					tokenRows.add(new Object[]{LoadTestData.verificationToken(n), id, tokenExpiry});
+				}
+			}
+			jdbcTemplate.batchUpdate(INSERT_USER, userRows);
+			jdbcTemplate.batchUpdate(INSERT_TOKEN, tokenRows);
+			userRows.clear();
+			tokenRows.clear();
+			if(to % 100_000 == 0 || to == users){
+				log.info("Generati {} utenti su {}", to, users);
+			}
+		}
+		// Gli ID sono stati inseriti esplicitamente: le registrazioni devono proseguire dopo l'ultimo (sintassi H2)
+		jdbcTemplate.execute("alter table users alter column id_user restart with " + LoadTestData.id(users));
+		// L'indice è stato costruito all'avvio, con la tabella ancora vuota
+		context.getBean(UserAvailabilityIndex.class).rebuild();
+		log.info("Generati {} utenti in {} s", users, (System.nanoTime() - start) / 1_000_000_000);
+	}
+}
@@ -0,0 +1,112 @@
+package springboot.belzedev.it.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test a concorrenza fissa contro un'istanza già avviata, per confrontare la modalità con thread pool
+ * e quella con virtual thread (profilo {@code virtual}) sullo stesso endpoint.
+ * Ogni client virtuale invia richieste una dopo l'altra per la durata indicata; al termine vengono stampati
+ * throughput, latenze p50/p99/max ed errori.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec \
+ *     -Dbenchmark.main=springboot.belzedev.it.loadtest.HttpLoadTest \
+ *     -Djmh.args="http://localhost:8080/api/users?limit=20 400 60"
+ * </pre>
+ */
+public final class HttpLoadTest {
+
+	private HttpLoadTest() {}
+
+	/**
+	 * @param args URL da chiamare, numero di client concorrenti (default 200), durata in secondi (default 30)
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1){
+			System.err.println("Uso: HttpLoadTest <url> [client concorrenti] [durata in secondi]");
+			System.exit(1);
+		}
+		URI uri = URI.create(args[0]);
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+		HttpClient httpClient = HttpClient.newBuilder()
+				.connectTimeout(Duration.ofSeconds(5))
+				.executor(Executors.newVirtualThreadPerTaskExecutor())
+				.build();
+		HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+
+		// Qualche secondo di riscaldamento, escluso dalle misure
+		run(httpClient, request, clients, Math.min(5, seconds));
+		Result result = run(httpClient, request, clients, seconds);
+
+		long[] latencies = result.latenciesMicros();
+		Arrays.sort(latencies);
+		System.out.printf("url=%s client=%d durata=%ds%n", uri, clients, seconds);
+		System.out.printf("richieste=%d errori=%d throughput=%.1f req/s%n",
+				latencies.length, result.errors(), latencies.length / (double) seconds);
+		System.out.printf("latenza p50=%.1f ms p99=%.1f ms max=%.1f ms%n",
+				percentile(latencies, 0.50) / 1000.0, percentile(latencies, 0.99) / 1000.0,
+				latencies.length > 0 ? latencies[latencies.length - 1] / 1000.0 : 0);
+	}
+
+	private record Result(long[] latenciesMicros, long errors) {}
+
+	private static Result run(HttpClient httpClient, HttpRequest request, int clients, int seconds) throws Exception {
+		long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+		AtomicLong errors = new AtomicLong();
+		List<Future<long[]>> futures = new ArrayList<>(clients);
+		try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()){
+			for(int i = 0; i < clients; i++){
+				futures.add(executor.submit(() -> {
+					long[] samples = new long[1024];
+					int count = 0;
+					while(System.nanoTime() < deadline){
+						long start = System.nanoTime();
+						try{
+							HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+							if(response.statusCode() >= 400){
+								errors.incrementAndGet();
+								continue;
+							}
+						}
+						catch (Exception e){
+							errors.incrementAndGet();
+							continue;
+						}
+						if(count == samples.length){
+							samples = Arrays.copyOf(samples, count * 2);
+						}
+						samples[count++] = (System.nanoTime() - start) / 1000;
+					}
+					return Arrays.copyOf(samples, count);
+				}));
+			}
+			List<long[]> perClient = new ArrayList<>(clients);
+			for(Future<long[]> future : futures){
+				perClient.add(future.get());
+			}
+			long[] all = perClient.stream().flatMapToLong(Arrays::stream).toArray();
+			return new Result(all, errors.get());
+		}
+	}
+
+	static long percentile(long[] sorted, double percentile) {
+		if(sorted.length == 0){
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+}
@@ -0,0 +1,42 @@
+package springboot.belzedev.it.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Convenzioni condivise da {@link DataSeeder} e {@link MixedLoadTest}: l'utente numero {@code n} generato
+ * ha ID, username, email e token di verifica ricavabili da {@code n}, così il load test può usarli
+ * senza leggere il database.
+ */
+final class LoadTestData {
+
+	/**
+	 * Password di tutti gli utenti generati.
+	 */
+	static final String PASSWORD = "load-test-password";
+
+	private LoadTestData() {}
+
+	static long id(long n) {
+		return n + 1;
+	}
+
+	static String username(long n) {
+		return "load-user-" + n;
+	}
+
+	static String email(long n) {
+		return "load-user-" + n + "@example.com";
+	}
+
+	/**
+	 * Gli utenti dispari non sono verificati e hanno un token di verifica.
+	 */
+	static boolean unverified(long n) {
+		return n % 2 == 1;
+	}
+
+	static String verificationToken(long n) {
+		return UUID.nameUUIDFromBytes(("load-token-" + n).getBytes(StandardCharsets.US_ASCII)).toString();
+	}
+}
@@ -0,0 +1,305 @@
+package springboot.belzedev.it.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test con carico misto contro un'istanza avviata con {@link OfflineServer}: registrazione, login,
+ * verifica dell'email e GET autenticata del proprio utente (con {@code If-None-Match}), scelte a caso
+ * in base ai pesi indicati. Login, verifica e GET usano gli utenti generati da {@link DataSeeder}.
+ * Ogni client virtuale invia richieste una dopo l'altra per la durata indicata; al termine vengono stampati,
+ * per ogni endpoint, throughput, latenze p50/p99/p999/max ed errori.
+ * Una verifica conta come errore anche quando il token era già stato usato.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec \
+ *     -Dbenchmark.main=springboot.belzedev.it.loadtest.MixedLoadTest \
+ *     -Djmh.args="http://localhost:8080 1000000 200 60 register=5,login=10,verify=5,get=80"
+ * </pre>
+ */
+public final class MixedLoadTest {
+
+	private static final String DEFAULT_MIX = "register=5,login=10,verify=5,get=80";
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private enum Operation {
+		REGISTER, LOGIN, VERIFY, GET
+	}
+
+	private MixedLoadTest() {}
+
+	/**
+	 * @param args URL base dell'istanza, numero di utenti generati (default 1000000), numero di client concorrenti
+	 *             (default 200), durata in secondi (default 60), pesi delle operazioni (default {@value #DEFAULT_MIX})
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1){
+			System.err.println("Uso: MixedLoadTest <url base> [utenti generati] [client concorrenti] [durata in secondi] [pesi]");
+			System.exit(1);
+		}
+		String baseUrl = args[0].endsWith("/") ? args[0].substring(0, args[0].length() - 1) : args[0];
+		long seededUsers = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+		int clients = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+		Map<Operation, Integer> mix = parseMix(args.length > 4 ? args[4] : DEFAULT_MIX);
+
+		HttpClient httpClient = HttpClient.newBuilder()
+				.connectTimeout(Duration.ofSeconds(5))
+				.executor(Executors.newVirtualThreadPerTaskExecutor())
+				.build();
+		Workload workload = new Workload(httpClient, baseUrl, seededUsers, mix);
+
+		// Qualche secondo di riscaldamento, escluso dalle misure
+		run(workload, clients, Math.min(10, seconds));
+		Map<Operation, Recorder> result = run(workload, clients, seconds);
+
+		System.out.printf("url=%s utenti=%d client=%d durata=%ds pesi=%s%n", baseUrl, seededUsers, clients, seconds, mix);
+		long total = 0;
+		for(Map.Entry<Operation, Recorder> entry : result.entrySet()){
+			Recorder recorder = entry.getValue();
+			long[] latencies = Arrays.copyOf(recorder.samples, recorder.count);
+			Arrays.sort(latencies);
+			total += latencies.length;
+			System.out.printf("%-8s richieste=%d errori=%d throughput=%.1f req/s p50=%.1f ms p99=%.1f ms p999=%.1f ms max=%.1f ms%n",
+					entry.getKey().name().toLowerCase(), latencies.length, recorder.errors, latencies.length / (double) seconds,
+					HttpLoadTest.percentile(latencies, 0.50) / 1000.0, HttpLoadTest.percentile(latencies, 0.99) / 1000.0,
+					HttpLoadTest.percentile(latencies, 0.999) / 1000.0,
+					latencies.length > 0 ? latencies[latencies.length - 1] / 1000.0 : 0);
+		}
+		System.out.printf("totale   richieste=%d throughput=%.1f req/s%n", total, total / (double) seconds);
+	}
+
+	// Latenze (in microsecondi) delle richieste riuscite ed errori di una singola operazione
+	private static final class Recorder {
+		long[] samples = new long[1024];
+		int count;
+		long errors;
+
+		void record(long micros) {
+			if(count == samples.length){
+				samples = Arrays.copyOf(samples, count * 2);
+			}
+			samples[count++] = micros;
+		}
+
+		void merge(Recorder other) {
+			samples = Arrays.copyOf(samples, count + other.count);
+			System.arraycopy(other.samples, 0, samples, count, other.count);
+			count += other.count;
+			errors += other.errors;
+		}
+	}
+
+	private static Map<Operation, Recorder> run(Workload workload, int clients, int seconds) throws Exception {
+		long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+		List<Future<Map<Operation, Recorder>>> futures = new ArrayList<>(clients);
+		try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()){
+			for(int i = 0; i < clients; i++){
+				futures.add(executor.submit(() -> {
+					Client client = workload.newClient();
+					// Il login iniziale per le GET autenticate non viene misurato
+					client.authenticate();
+					Map<Operation, Recorder> recorders = newRecorders();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					while(System.nanoTime() < deadline){
+						Operation operation = workload.pick(random);
+						long start = System.nanoTime();
+						boolean success;
+						try{
+							success = client.execute(operation, random);
+						}
+						catch (Exception e){
+							success = false;
+						}
+						if(success){
+							recorders.get(operation).record((System.nanoTime() - start) / 1000);
+						}
+						else{
+							recorders.get(operation).errors++;
+						}
+					}
+					return recorders;
+				}));
+			}
+			Map<Operation, Recorder> all = newRecorders();
+			for(Future<Map<Operation, Recorder>> future : futures){
+				future.get().forEach((operation, recorder) -> all.get(operation).merge(recorder));
+			}
+			return all;
+		}
+	}
+
+	private static Map<Operation, Recorder> newRecorders() {
+		Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+		for(Operation operation : Operation.values()){
+			recorders.put(operation, new Recorder());
+		}
+		return recorders;
+	}
+
+	private static Map<Operation, Integer> parseMix(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+		for(String part : mix.split(",")){
+			String[] pair = part.trim().split("=");
+			weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+		}
+		if(weights.values().stream().mapToInt(Integer::intValue).sum() <= 0){
+			throw new IllegalArgumentException("Almeno un peso deve essere positivo: " + mix);
+		}
+		return weights;
+	}
+
+	// Parametri condivisi da tutti i client
+	private static final class Workload {
+		final HttpClient httpClient;
+		final String baseUrl;
+		final long seededUsers;
+		final Operation[] operations;
+		final int[] cumulativeWeights;
+		// Distingue gli username registrati da esecuzioni diverse
+		final String runId = Long.toString(System.currentTimeMillis(), 36);
+		// Numera le registrazioni, riscaldamento compreso
+		final AtomicLong registrations = new AtomicLong();
+
+		Workload(HttpClient httpClient, String baseUrl, long seededUsers, Map<Operation, Integer> mix) {
+			this.httpClient = httpClient;
+			this.baseUrl = baseUrl;
+			this.seededUsers = seededUsers;
+			this.operations = mix.keySet().toArray(new Operation[0]);
+			this.cumulativeWeights = new int[operations.length];
+			int sum = 0;
+			for(int i = 0; i < operations.length; i++){
+				sum += mix.get(operations[i]);
+				cumulativeWeights[i] = sum;
+			}
+		}
+
+		Operation pick(ThreadLocalRandom random) {
+			int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+			for(int i = 0; i < cumulativeWeights.length; i++){
+				if(value < cumulativeWeights[i]){
+					return operations[i];
+				}
+			}
+			return operations[operations.length - 1];
+		}
+
+		Client newClient() {
+			return new Client(this, ThreadLocalRandom.current().nextLong(seededUsers));
+		}
+	}
+
+	// Un client virtuale, con l'utente generato con cui esegue le GET autenticate
+	private static final class Client {
+		private final Workload workload;
+		private final long user;
+		private String jwt;
+		private String etag;
+
+		Client(Workload workload, long user) {
+			this.workload = workload;
+			this.user = user;
+		}
+
+		boolean execute(Operation operation, ThreadLocalRandom random) throws Exception {
+			return switch(operation){
+				case REGISTER -> register();
+				case LOGIN -> login(random.nextLong(workload.seededUsers)) != null;
+				case VERIFY -> verify(random);
+				case GET -> getUser();
+			};
+		}
+
+		private boolean register() throws Exception {
+			String username = "load-" + workload.runId + "-" + workload.registrations.incrementAndGet();
+			HttpResponse<Void> response = send(post("/api/register", "{\"email\":\"" + username + "@example.com\","
+					+ "\"username\":\"" + username + "\",\"psw\":\"" + LoadTestData.PASSWORD + "\"}"), HttpResponse.BodyHandlers.discarding());
+			return response.statusCode() == 201;
+		}
+
+		// Restituisce il JWT, oppure null se il login è fallito
+		private String login(long n) throws Exception {
+			HttpResponse<String> response = send(post("/api/login", "{\"username\":\"" + LoadTestData.username(n) + "\","
+					+ "\"psw\":\"" + LoadTestData.PASSWORD + "\"}"), HttpResponse.BodyHandlers.ofString());
+			if(response.statusCode() != 201){
+				return null;
+			}
+			return OBJECT_MAPPER.readTree(response.body()).path("message").asText(null);
+		}
+
+		// Usa il token di un utente non verificato; il token viene consumato dalla prima verifica
+		private boolean verify(ThreadLocalRandom random) throws Exception {
+			long n = 2 * random.nextLong(Math.max(1, workload.seededUsers / 2)) + 1;
+			HttpRequest request = request("/api/verify-email?token=" + LoadTestData.verificationToken(n)).GET().build();
+			HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+			return response.statusCode() == 302
+					&& response.headers().firstValue("Location").orElse("").endsWith("verified=true");
+		}
+
+		void authenticate() {
+			try{
+				jwt = login(user);
+			}
+			catch (Exception e){
+				jwt = null;
+			}
+		}
+
+		// GET condizionale del proprio utente, come il polling del frontend; dopo un 401 ripete il login
+		private boolean getUser() throws Exception {
+			if(jwt == null){
+				jwt = login(user);
+				if(jwt == null){
+					return false;
+				}
+			}
+			HttpRequest.Builder builder = request("/api/users/" + LoadTestData.id(user))
+					.header("Authorization", "Bearer " + jwt)
+					.GET();
+			if(etag != null){
+				builder.header("If-None-Match", etag);
+			}
+			HttpResponse<Void> response = send(builder.build(), HttpResponse.BodyHandlers.discarding());
+			if(response.statusCode() == 401){
+				jwt = null;
+				return false;
+			}
+			if(response.statusCode() == 200){
+				etag = response.headers().firstValue("ETag").orElse(null);
+				return true;
+			}
+			return response.statusCode() == 304;
+		}
+
+		private HttpRequest post(String path, String json) {
+			return request(path)
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(json))
+					.build();
+		}
+
+		private HttpRequest.Builder request(String path) {
+			return HttpRequest.newBuilder(URI.create(workload.baseUrl + path)).timeout(Duration.ofSeconds(30));
+		}
+
+		private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws Exception {
+			return workload.httpClient.send(request, handler);
+		}
+	}
+}
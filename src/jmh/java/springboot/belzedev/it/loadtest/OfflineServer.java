@@ -0,0 +1,68 @@
+package springboot.belzedev.it.loadtest;
+
+import com.icegreen.greenmail.store.FolderException;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import springboot.belzedev.it.SpringbootApplication;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Avvia un'istanza completamente offline per i load test: un server SMTP locale (GreenMail) e l'applicazione
+ * con il profilo {@code perf} (H2 su file), poi genera i dati con {@link DataSeeder} se il database è vuoto.
+ * L'istanza resta in esecuzione finché il processo non viene interrotto; il carico si genera con {@link MixedLoadTest}.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec \
+ *     -Dbenchmark.main=springboot.belzedev.it.loadtest.OfflineServer \
+ *     -Djmh.args="1000000 --server.port=8080"
+ * </pre>
+ */
+public final class OfflineServer {
+
+	private static final Logger log = LoggerFactory.getLogger(OfflineServer.class);
+
+	private static final int SMTP_PORT = 3025;
+
+	private OfflineServer() {}
+
+	/**
+	 * @param args numero di utenti da generare (default 1000000), seguito da eventuali argomenti per Spring Boot
+	 */
+	public static void main(String[] args) {
+		long users = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+		String[] springArgs = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : new String[0];
+
+		GreenMail smtp = new GreenMail(new ServerSetup(SMTP_PORT, "127.0.0.1", ServerSetup.PROTOCOL_SMTP));
+		smtp.start();
+		// GreenMail tiene in memoria le email ricevute: vengono scartate periodicamente
+		ScheduledExecutorService purger = Executors.newSingleThreadScheduledExecutor();
+		purger.scheduleWithFixedDelay(() -> {
+			try{
+				smtp.purgeEmailFromAllMailboxes();
+			}
+			catch (FolderException e){
+				log.warn("Pulizia delle email ricevute fallita: {}", e.getMessage());
+			}
+		}, 10, 10, TimeUnit.SECONDS);
+
+		SpringApplication application = new SpringApplication(SpringbootApplication.class);
+		application.setAdditionalProfiles("perf");
+		ConfigurableApplicationContext context = application.run(springArgs);
+		// Alla chiusura del processo ferma anche il server SMTP
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			purger.shutdownNow();
+			smtp.stop();
+		}));
+
+		DataSeeder.seed(context, users);
+		log.info("Istanza offline pronta: utenti load-user-0..load-user-{}, password \"{}\"", users - 1, LoadTestData.PASSWORD);
+	}
+}
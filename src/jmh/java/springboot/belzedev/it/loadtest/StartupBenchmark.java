@@ -0,0 +1,112 @@
+package springboot.belzedev.it.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misura il tempo di avvio come tempo alla prima richiesta riuscita: avvia l'applicazione con il comando indicato,
+ * interroga l'URL finché non risponde con un 2xx e poi termina il processo, per il numero di avvii richiesto.
+ * Stampa minimo, mediana e massimo e aggiunge una riga a {@code target/startup-history.csv},
+ * così il valore può essere confrontato tra una release e l'altra (es. con e senza il profilo {@code faststart}).
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec \
+ *     -Dbenchmark.main=springboot.belzedev.it.loadtest.StartupBenchmark \
+ *     -Djmh.args="0.0.1-SNAPSHOT 5 http://localhost:8080/api/users?limit=1 \
+ *         java -XX:SharedArchiveFile=target/faststart/application.jsa -Dspring.aot.enabled=true -jar target/faststart/springboot-0.0.1-SNAPSHOT.jar"
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+	private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(3);
+
+	private static final long POLL_INTERVAL_MILLIS = 10;
+
+	private static final Path HISTORY = Path.of("target", "startup-history.csv");
+
+	private StartupBenchmark() {}
+
+	/**
+	 * @param args etichetta della release, numero di avvii, URL da interrogare, comando che avvia l'applicazione
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 4){
+			System.err.println("Uso: StartupBenchmark <release> <avvii> <url> <comando...>");
+			System.exit(1);
+		}
+		String release = args[0];
+		int runs = Integer.parseInt(args[1]);
+		URI uri = URI.create(args[2]);
+		List<String> command = Arrays.asList(args).subList(3, args.length);
+
+		HttpClient httpClient = HttpClient.newBuilder()
+				.connectTimeout(Duration.ofMillis(500))
+				.build();
+		HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(5)).GET().build();
+
+		long[] millis = new long[runs];
+		for(int i = 0; i < runs; i++){
+			millis[i] = measure(httpClient, request, command);
+			System.out.printf("avvio %d: prima richiesta riuscita dopo %d ms%n", i + 1, millis[i]);
+		}
+		Arrays.sort(millis);
+		long median = millis[(runs - 1) / 2];
+		System.out.printf("release=%s avvii=%d min=%d ms mediana=%d ms max=%d ms%n",
+				release, runs, millis[0], median, millis[runs - 1]);
+
+		boolean header = !Files.exists(HISTORY);
+		Files.createDirectories(HISTORY.getParent());
+		String row = (header ? "timestamp,release,runs,min_ms,median_ms,max_ms,command\n" : "")
+				+ Instant.now() + "," + release + "," + runs + "," + millis[0] + "," + median + "," + millis[runs - 1]
+				+ ",\"" + String.join(" ", command).replace("\"", "\"\"") + "\"\n";
+		Files.writeString(HISTORY, row, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	// Tempo, in millisecondi, dall'avvio del processo alla prima risposta 2xx
+	private static long measure(HttpClient httpClient, HttpRequest request, List<String> command) throws Exception {
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+				.start();
+		try{
+			long deadline = start + STARTUP_TIMEOUT.toNanos();
+			while(true){
+				if(!process.isAlive()){
+					throw new IllegalStateException("L'applicazione è terminata durante l'avvio con codice " + process.exitValue());
+				}
+				try{
+					HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+					if(response.statusCode() >= 200 && response.statusCode() < 300){
+						return (System.nanoTime() - start) / 1_000_000;
+					}
+				}
+				catch (IOException e){
+					// Non ancora in ascolto
+				}
+				if(System.nanoTime() > deadline){
+					throw new IllegalStateException("Nessuna risposta riuscita entro " + STARTUP_TIMEOUT);
+				}
+				Thread.sleep(POLL_INTERVAL_MILLIS);
+			}
+		}
+		finally{
+			process.destroy();
+			if(!process.waitFor(30, TimeUnit.SECONDS)){
+				process.destroyForcibly().waitFor();
+			}
+		}
+	}
+}
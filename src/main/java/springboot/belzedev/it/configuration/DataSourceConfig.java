@@ -0,0 +1,142 @@
+package springboot.belzedev.it.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import springboot.belzedev.it.datasource.ReadWriteRoutingDataSource;
+import springboot.belzedev.it.datasource.ReplicaLagMonitor;
+import springboot.belzedev.it.datasource.RoutingJpaTransactionManager;
+import springboot.belzedev.it.datasource.StatementInstrumentationPostProcessor;
+import springboot.belzedev.it.datasource.StatementMetrics;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configura l'accesso al database: le scritture vanno al primario e, se sono configurate delle repliche,
+ * le transazioni in sola lettura vengono instradate verso di esse. Ogni istruzione JDBC viene misurata.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * Transaction manager JPA che rende disponibile all'instradamento il ritardo di replica tollerato
+     * da ogni transazione. Senza repliche configurate si comporta come quello di default.
+     *
+     * @param customizers le personalizzazioni di Spring Boot ({@code spring.transaction.*})
+     * @return il transaction manager
+     */
+    @Bean
+    public JpaTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> customizers) {
+        JpaTransactionManager transactionManager = new RoutingJpaTransactionManager();
+        customizers.ifAvailable(c -> c.customize(transactionManager));
+        return transactionManager;
+    }
+
+    /**
+     * Avvolge il DataSource principale per misurare le istruzioni JDBC e marca i repository come loro origine.
+     *
+     * @return il post-processor che installa la misura
+     */
+    @Bean
+    public static StatementInstrumentationPostProcessor statementInstrumentation() {
+        return new StatementInstrumentationPostProcessor();
+    }
+
+    /**
+     * @param registry il registro delle metriche
+     * @param slowThreshold la durata oltre la quale un'istruzione viene sempre scritta nel log
+     * @param sampleRate la frazione delle altre istruzioni scritte nel log
+     * @param maxSeries il numero massimo di coppie istruzione-origine con un timer dedicato
+     * @return il componente che registra latenza e log delle istruzioni JDBC
+     */
+    @Bean
+    public StatementMetrics statementMetrics(MeterRegistry registry,
+                                             @Value("${db.statement.slow-threshold:200ms}") Duration slowThreshold,
+                                             @Value("${db.statement.sample-rate:0.001}") double sampleRate,
+                                             @Value("${db.statement.max-series:200}") int maxSeries) {
+        return new StatementMetrics(registry, slowThreshold, sampleRate, maxSeries);
+    }
+
+    /**
+     * Pool verso il primario e le repliche, attivi solo se {@code datasource.replica.urls} è valorizzata.
+     * Tutti i pool usano le credenziali e le impostazioni Hikari di {@code spring.datasource.*};
+     * i pool delle repliche sono in sola lettura.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "datasource.replica", name = "urls")
+    static class ReplicaRoutingConfiguration {
+
+        /**
+         * @param properties le proprietà {@code spring.datasource.*} del primario
+         * @param environment l'ambiente, da cui leggere le impostazioni Hikari
+         * @param urls gli URL JDBC delle repliche
+         * @param defaultMaxLag il ritardo di replica tollerato dalle transazioni senza etichetta
+         * @return il DataSource che instrada tra primario e repliche
+         */
+        @Bean
+        public ReadWriteRoutingDataSource routingDataSource(DataSourceProperties properties,
+                                                            Environment environment,
+                                                            @Value("${datasource.replica.urls}") List<String> urls,
+                                                            @Value("${datasource.replica.max-lag:5s}") Duration defaultMaxLag) {
+            Binder binder = Binder.get(environment);
+            HikariDataSource primary = pool(properties, binder, properties.getUrl(), "primary");
+            List<DataSource> replicas = new ArrayList<>();
+            for(int i = 0; i < urls.size(); i++){
+                HikariDataSource replica = pool(properties, binder, urls.get(i).trim(), "replica-" + i);
+                replica.setReadOnly(true);
+                replicas.add(replica);
+            }
+            return new ReadWriteRoutingDataSource(primary, replicas, defaultMaxLag);
+        }
+
+        /**
+         * Il DataSource usato da JPA e JDBC: sceglie il pool alla prima istruzione di ogni transazione.
+         *
+         * @param routingDataSource il DataSource che instrada tra primario e repliche
+         * @return il DataSource principale dell'applicazione
+         */
+        @Bean
+        @Primary
+        public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+            return new LazyConnectionDataSourceProxy(routingDataSource);
+        }
+
+        /**
+         * @param routingDataSource il DataSource che instrada tra primario e repliche
+         * @param lagQuery la query che misura il ritardo delle repliche
+         * @param registry il registro delle metriche
+         * @return il componente che misura periodicamente il ritardo delle repliche
+         */
+        @Bean
+        public ReplicaLagMonitor replicaLagMonitor(ReadWriteRoutingDataSource routingDataSource,
+                                                   @Value("${datasource.replica.lag-query:SHOW REPLICA STATUS}") String lagQuery,
+                                                   MeterRegistry registry) {
+            return new ReplicaLagMonitor(routingDataSource, lagQuery, registry);
+        }
+
+        private static HikariDataSource pool(DataSourceProperties properties, Binder binder, String url, String name) {
+            HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(url)
+                    .build();
+            binder.bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+            dataSource.setPoolName(name);
+            return dataSource;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package springboot.belzedev.it.configuration;
+
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mail.javamail.JavaMailSender;
+
+/**
+ * Rimanda la creazione dei bean non necessari per servire le prime richieste, per accorciare l'avvio.
+ * Il {@link JavaMailSender} dell'autoconfigurazione viene creato solo al primo invio dalla outbox;
+ * {@link springboot.belzedev.it.services.EmailService} è {@code @Lazy} e iniettato come proxy.
+ * Con Spring AOT il post-processor viene eseguito durante la build e il flag resta nelle definizioni generate.
+ */
+@Configuration
+public class LazyInitializationConfig {
+
+    /**
+     * Segna come lazy i bean del server SMTP.
+     *
+     * @return il post-processor che modifica le definizioni dei bean
+     */
+    @Bean
+    public static BeanFactoryPostProcessor lazyMailBeans() {
+        return beanFactory -> {
+            for(String name : beanFactory.getBeanNamesForType(JavaMailSender.class, true, false)){
+                beanFactory.getBeanDefinition(name).setLazyInit(true);
+            }
+        };
+    }
+}
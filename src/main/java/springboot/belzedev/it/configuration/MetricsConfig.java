@@ -0,0 +1,75 @@
+package springboot.belzedev.it.configuration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import springboot.belzedev.it.security.BCryptCalibration;
+import springboot.belzedev.it.services.CustomUserDetailsService;
+import springboot.belzedev.it.utils.ExpiringCache;
+import springboot.belzedev.it.utils.JwtUtil;
+
+/**
+ * Registra su Micrometer le metriche dei componenti applicativi,
+ * consultabili tramite l'endpoint Actuator {@code /actuator/metrics}.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Espone le statistiche delle cache in memoria (dimensione, hit, miss ed eviction),
+     * utili per dimensionarle correttamente.
+     *
+     * @param jwtUtil il componente che contiene la cache dei token verificati
+     * @param userDetailsService il servizio che contiene la cache dei principal
+     * @return il binder che registra le metriche delle cache
+     */
+    @Bean
+    public MeterBinder applicationCacheMetrics(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService) {
+        return registry -> {
+            bindCache(registry, "jwt.verified", jwtUtil.getVerifiedTokenCache());
+            bindCache(registry, "principals", userDetailsService.getPrincipalCache());
+        };
+    }
+
+    /**
+     * Espone il risultato della calibrazione BCrypt eseguita all'avvio.
+     *
+     * @param calibration il risultato della calibrazione
+     * @return il binder che registra le metriche della calibrazione
+     */
+    @Bean
+    public MeterBinder bCryptCalibrationMetrics(BCryptCalibration calibration) {
+        return registry -> {
+            Gauge.builder("security.bcrypt.strength", calibration, BCryptCalibration::getStrength)
+                    .tag("calibrated", String.valueOf(calibration.isCalibrated()))
+                    .register(registry);
+            Gauge.builder("security.bcrypt.hash.millis", calibration, BCryptCalibration::getHashMillis)
+                    .description("Tempo misurato all'avvio per un hash con la strength scelta")
+                    .register(registry);
+            Gauge.builder("security.bcrypt.budget.millis", calibration, BCryptCalibration::getBudgetMillis)
+                    .register(registry);
+        };
+    }
+
+    // Registra le metriche di una singola cache con il tag "cache"
+    private static void bindCache(MeterRegistry registry, String name, ExpiringCache<?, ?> cache) {
+        Gauge.builder("app.cache.size", cache, ExpiringCache::size)
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("app.cache.max.size", cache, ExpiringCache::getMaxSize)
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("app.cache.gets", cache, ExpiringCache::getHits)
+                .tag("cache", name).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("app.cache.gets", cache, ExpiringCache::getMisses)
+                .tag("cache", name).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("app.cache.evictions", cache, ExpiringCache::getEvictions)
+                .tag("cache", name)
+                .register(registry);
+    }
+}
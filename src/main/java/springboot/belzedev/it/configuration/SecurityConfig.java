@@ -1,8 +1,12 @@
 package springboot.belzedev.it.configuration;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -10,8 +14,12 @@ import org.springframework.security.config.annotation.web.configurers.AbstractHt
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import springboot.belzedev.it.security.BCryptCalibration;
 import springboot.belzedev.it.security.JwtRequestFilter;
 import springboot.belzedev.it.services.CustomUserDetailsService;
+import springboot.belzedev.it.services.UserImportService;
 
 @Configuration
 public class SecurityConfig {
@@ -24,9 +32,16 @@ public class SecurityConfig {
     @Autowired
     private JwtRequestFilter jwtRequestFilter;
 
+    // Porta di gestione su cui sono esposti gli endpoint Actuator (-1 = stessa porta dell'applicazione)
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     /**
      * Configura la catena di filtri di sicurezza per l'applicazione.
      * Disabilita il CSRF, consente tutte le richieste HTTP e aggiunge il filtro JWT prima di quello di autenticazione.
+     * Gli endpoint Actuator diversi da health (metriche, Prometheus) sono negati se la richiesta non arriva
+     * sulla porta di gestione, che non deve essere esposta all'esterno.
+     * L'import massivo degli utenti richiede un token JWT di un operatore con il permesso {@link UserImportService#AUTHORITY}.
      *
      * @param http l'oggetto HttpSecurity per configurare le autorizzazioni e i filtri di sicurezza
      * @return il SecurityFilterChain configurato
@@ -34,24 +49,53 @@ public class SecurityConfig {
      */
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception{
-        // Disabilita il CSRF e consente tutte le richieste HTTP
+        // Richieste Actuator arrivate sulla porta pubblica, esclusa health
+        RequestMatcher publicActuator = new AndRequestMatcher(
+                request -> request.getLocalPort() != managementPort,
+                EndpointRequest.toAnyEndpoint().excluding(HealthEndpoint.class));
+        // Disabilita il CSRF e consente tutte le richieste HTTP, tranne Actuator sulla porta pubblica
         http.csrf(AbstractHttpConfigurer::disable)
-                .authorizeHttpRequests(auth -> auth.anyRequest().permitAll())
+                .authorizeHttpRequests(auth -> auth
+                        .requestMatchers(publicActuator).denyAll()
+                        .requestMatchers(HttpMethod.POST, "/api/users/import").hasAuthority(UserImportService.AUTHORITY)
+                        .anyRequest().permitAll())
                 // Aggiunge il filtro JWT prima del filtro standard di autenticazione
                 .addFilterBefore(jwtRequestFilter, UsernamePasswordAuthenticationFilter.class);
         return http.build();
     }
 
+    /**
+     * Calibra all'avvio la strength BCrypt sulla macchina corrente, in base al budget di latenza per hash.
+     * Se {@code security.bcrypt.strength} è valorizzata, la calibrazione viene saltata e si usa quel valore.
+     *
+     * @param fixedStrength strength imposta da configurazione (0 = calibrazione automatica)
+     * @param budgetMillis budget di latenza per singolo hash, in millisecondi
+     * @param minStrength strength minima ammessa
+     * @param maxStrength strength massima ammessa
+     * @return il risultato della calibrazione
+     */
+    @Bean
+    public BCryptCalibration bCryptCalibration(@Value("${security.bcrypt.strength:0}") int fixedStrength,
+                                               @Value("${security.bcrypt.budget-ms:250}") long budgetMillis,
+                                               @Value("${security.bcrypt.min-strength:10}") int minStrength,
+                                               @Value("${security.bcrypt.max-strength:14}") int maxStrength){
+        if(fixedStrength > 0){
+            return BCryptCalibration.fixed(fixedStrength);
+        }
+        return BCryptCalibration.calibrate(budgetMillis, minStrength, maxStrength);
+    }
+
     /**
      * Definisce il bean BCryptPasswordEncoder per codificare le password degli utenti.
      * Questo encoder viene utilizzato per criptare le password e confrontarle durante l'autenticazione.
      *
-     * @return un'istanza di BCryptPasswordEncoder
+     * @param calibration il risultato della calibrazione BCrypt eseguita all'avvio
+     * @return un'istanza di BCryptPasswordEncoder con la strength calibrata
      */
     @Bean
-    public BCryptPasswordEncoder passwordEncoder(){
-        // Restituisce un'istanza di BCryptPasswordEncoder
-        return new BCryptPasswordEncoder();
+    public BCryptPasswordEncoder passwordEncoder(BCryptCalibration calibration){
+        // Restituisce un'istanza di BCryptPasswordEncoder con la strength scelta dalla calibrazione
+        return new BCryptPasswordEncoder(calibration.getStrength());
     }
 
     /**
@@ -1,29 +1,42 @@
 package springboot.belzedev.it.controllers;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import springboot.belzedev.it.dto.ApiResponse;
 import springboot.belzedev.it.enums.ErrorsResponse;
+import springboot.belzedev.it.exceptions.HashingCapacityExceededException;
 import springboot.belzedev.it.exceptions.InvalidPasswordException;
+import springboot.belzedev.it.exceptions.InvalidRefreshTokenException;
 import springboot.belzedev.it.exceptions.InvalidUsernameException;
+import springboot.belzedev.it.exceptions.LoginThrottledException;
+import springboot.belzedev.it.exceptions.RefreshInProgressException;
 import springboot.belzedev.it.models.User;
 import springboot.belzedev.it.repository.UserRepository;
+import springboot.belzedev.it.security.AuthMetrics;
+import springboot.belzedev.it.security.RefreshTokenCookies;
 import springboot.belzedev.it.services.CustomUserDetailsService;
 import springboot.belzedev.it.services.LoginRegisterService;
+import springboot.belzedev.it.services.LoginThrottlingService;
+import springboot.belzedev.it.services.RefreshTokenService;
+import springboot.belzedev.it.utils.FutureUtils;
 import springboot.belzedev.it.utils.JwtUtil;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller per la gestione delle richieste di autenticazione (login).
- * Fornisce un endpoint per la creazione di un token di autenticazione JWT.
+ * Fornisce gli endpoint per la creazione di un token di autenticazione JWT e per il suo rinnovo tramite refresh token.
  */
 @RestController
-@CrossOrigin(origins = "https://feangukartk.up.railway.app")
+@CrossOrigin(origins = "https://feangukartk.up.railway.app", allowCredentials = "true")
 @RequestMapping("/api/login")
 public class LoginController {
 
@@ -46,38 +59,127 @@ public class LoginController {
     @Autowired
     LoginRegisterService loginRegisterService;
 
+    // Inietta il servizio che limita i tentativi di login per username e per IP
+    @Autowired
+    private LoginThrottlingService loginThrottlingService;
+
+    // Inietta le metriche di durata ed esito dell'autenticazione
+    @Autowired
+    private AuthMetrics authMetrics;
+
+    // Inietta il servizio dei refresh token e il componente che crea il cookie che li trasporta
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+    @Autowired
+    private RefreshTokenCookies refreshTokenCookies;
+
+    // Executor applicativo su cui completare il login dopo la verifica della password
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor taskExecutor;
+
     /**
      * Autentica l'utente e genera un token JWT.
+     * La verifica della password avviene in modo asincrono, senza occupare il thread della richiesta.
+     * I tentativi sono limitati per username e per indirizzo IP prima di accedere al database.
      *
      * @Param credential Un oggetto Map che contiene le credenziali di accesso dell'utente (username e password).
-     * @Return Un ResponseEntity che contiene il token JWT se l'autenticazione ha successo,
+     * @Param request La richiesta HTTP, da cui si ricava l'indirizzo IP del client.
+     * @Return Un future con un ResponseEntity che contiene il token JWT se l'autenticazione ha successo,
      *         o un messaggio di errore in caso di fallimento.
      * @Throws InvalidUsernameException Se l'username non esiste nel database.
      * @Throws InvalidPasswordException Se la password non corrisponde.
+     * @Throws HashingCapacityExceededException Se la coda di hashing è piena.
+     * @Throws LoginThrottledException Se sono stati superati i tentativi ammessi per lo username o per l'IP.
      */
     @PostMapping
-    public ResponseEntity<ApiResponse> createAuthenticationToken(@RequestBody Map<String, String> credential) throws Exception{
+    public CompletableFuture<ResponseEntity<ApiResponse>> createAuthenticationToken(@RequestBody Map<String, String> credential,
+                                                                                   HttpServletRequest request){
+        String username = credential.get("username");
+        try{
+            // Consuma un tentativo prima di toccare database e BCrypt
+            loginThrottlingService.acquire(username, request.getRemoteAddr());
+        }
+        catch (LoginThrottledException e){
+            return authMetrics.record("login", () -> CompletableFuture.completedFuture(errorResponse(e)));
+        }
+        // Estrae username e password dalle credenziali e chiama il service per autenticare l'utente
+        return authMetrics.record("login", () -> loginRegisterService.login(username, credential.get("psw"))
+                // Prosegue sull'executor applicativo: il salvataggio del refresh token non deve occupare i thread BCrypt
+                .thenApplyAsync(user -> {
+                    // Login riuscito: ripristina i tentativi dello username
+                    loginThrottlingService.reset(user.getUsername());
+                    // Genera il token JWT per l'utente autenticato
+                    final String token = jwtUtil.generateToken(user.getUsername(), user.getId_user());
+                    // Emette il refresh token, con cui rinnovare l'access token senza ripetere il login
+                    String refreshToken = refreshTokenService.issue(user.getId_user());
+                    // Restituisce una risposta HTTP 201 Created con il token generato in caso di successo
+                    return ResponseEntity.status(HttpStatus.CREATED)
+                            .header(HttpHeaders.SET_COOKIE, refreshTokenCookies.create(refreshToken).toString())
+                            .body(new ApiResponse(token, true));
+                }, taskExecutor)
+                .exceptionally(this::errorResponse));
+    }
+
+    /**
+     * Emette un nuovo access token a partire dal refresh token nel cookie, senza verificare la password.
+     * Il refresh token viene ruotato: quello presentato non è più valido e il cookie ne contiene uno nuovo.
+     *
+     * @param refreshToken il refresh token inviato nel cookie
+     * @return un ResponseEntity con stato 201 (CREATED) che contiene il nuovo access token,
+     *         409 (CONFLICT) se il refresh token è stato appena ruotato da una richiesta concorrente,
+     *         oppure 401 (UNAUTHORIZED) se il refresh token non è valido
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<ApiResponse> refresh(@CookieValue(name = RefreshTokenCookies.NAME, required = false) String refreshToken){
         try{
-            // Estrae username e password dalle credenziali e chiama il service per autenticare l'utente
-            User user = loginRegisterService.login(credential.get("username"), credential.get("psw"));
-            // Carica i dettagli dell'utente, necessari per il token JWT
-            final UserDetails userDetails = userDetailsService.loadUserByUsername(user.getUsername());
-            // Genera il token JWT per l'utente autenticato
-            final String token = jwtUtil.generateToken(userDetails.getUsername(), user.getId_user());
-            // Restituisce una risposta HTTP 201 Created con il token generato in caso di successo
+            RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshToken);
+            User user = rotation.user();
+            String token = jwtUtil.generateToken(user.getUsername(), user.getId_user());
             return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(HttpHeaders.SET_COOKIE, refreshTokenCookies.create(rotation.refreshToken()).toString())
                     .body(new ApiResponse(token, true));
         }
-        catch (InvalidUsernameException | InvalidPasswordException e){
+        catch (RefreshInProgressException e){
+            // Nessun Set-Cookie: non deve sovrascrivere il cookie impostato dalla richiesta che ha eseguito la rotazione
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ApiResponse(e.getMessage(), false));
+        }
+        catch (InvalidRefreshTokenException e){
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .header(HttpHeaders.SET_COOKIE, refreshTokenCookies.clear().toString())
+                    .body(new ApiResponse(e.getMessage(), false));
+        }
+    }
+
+    /**
+     * Converte un errore dell'autenticazione nella risposta HTTP corrispondente.
+     *
+     * @param throwable l'errore prodotto dal future di login
+     * @return la risposta HTTP di errore
+     */
+    private ResponseEntity<ApiResponse> errorResponse(Throwable throwable){
+        Throwable e = FutureUtils.unwrap(throwable);
+        if(e instanceof InvalidUsernameException || e instanceof InvalidPasswordException){
             // Se c'è un'eccezione (username o password errati), restituisce una risposta HTTP 400 Bad Request
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(new ApiResponse(e.getMessage(), false));
         }
-        catch (Exception e){
-            // Gestisce eventuali altre eccezioni e restituisce una risposta con stato 400 (BAD REQUEST) e un messaggio di errore generico
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(new ApiResponse(ErrorsResponse.SERVER_ERROR.name(), false));
+        if(e instanceof LoginThrottledException throttled){
+            // Se i tentativi sono esauriti, restituisce una risposta HTTP 429 con l'header Retry-After
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(throttled.getRetryAfterSeconds()))
+                    .body(new ApiResponse(throttled.getMessage(), false));
+        }
+        if(e instanceof HashingCapacityExceededException busy){
+            // Se la coda di hashing è piena, restituisce una risposta HTTP 503 con l'header Retry-After
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(busy.getRetryAfterSeconds()))
+                    .body(new ApiResponse(busy.getMessage(), false));
         }
+        // Gestisce eventuali altre eccezioni e restituisce una risposta con stato 400 (BAD REQUEST) e un messaggio di errore generico
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new ApiResponse(ErrorsResponse.SERVER_ERROR.name(), false));
     }
 
 }
@@ -0,0 +1,58 @@
+package springboot.belzedev.it.controllers;
+
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CookieValue;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import springboot.belzedev.it.dto.ApiResponse;
+import springboot.belzedev.it.enums.ErrorsResponse;
+import springboot.belzedev.it.security.JwtRequestFilter;
+import springboot.belzedev.it.security.RefreshTokenCookies;
+import springboot.belzedev.it.services.RefreshTokenService;
+import springboot.belzedev.it.services.TokenRevocationService;
+
+@RestController
+@CrossOrigin(origins = "https://feangukartk.up.railway.app", allowCredentials = "true")
+@RequestMapping("/api/logout")
+public class LogoutController {
+
+    // Inietta il servizio per la revoca dei token
+    @Autowired
+    private TokenRevocationService revocationService;
+
+    // Inietta il servizio dei refresh token e il componente che crea il cookie che li trasporta
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+    @Autowired
+    private RefreshTokenCookies refreshTokenCookies;
+
+    /**
+     * Revoca il token con cui è stata autenticata la richiesta: dal momento della risposta non è più accettato.
+     *
+     * @param request la richiesta HTTP, con i claims impostati dal filtro JWT
+     * @param refreshToken il refresh token inviato nel cookie, se presente
+     * @return una risposta HTTP con stato 204 (NO CONTENT) se il token è stato revocato,
+     *         oppure 401 (UNAUTHORIZED) se la richiesta non ha un token valido
+     */
+    @PostMapping
+    public ResponseEntity<ApiResponse> logout(HttpServletRequest request,
+                                              @CookieValue(name = RefreshTokenCookies.NAME, required = false) String refreshToken){
+        if(!(request.getAttribute(JwtRequestFilter.CLAIMS_ATTRIBUTE) instanceof Claims claims)){
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ApiResponse(ErrorsResponse.INVALID_TOKEN.name(), false));
+        }
+        revocationService.revoke(claims);
+        // Revoca anche il refresh token della sessione e cancella il cookie
+        refreshTokenService.revoke(refreshToken);
+        return ResponseEntity.noContent()
+                .header(HttpHeaders.SET_COOKIE, refreshTokenCookies.clear().toString())
+                .build();
+    }
+}
@@ -1,17 +1,26 @@
 package springboot.belzedev.it.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import springboot.belzedev.it.dto.ApiResponse;
 import springboot.belzedev.it.enums.ErrorsResponse;
 import springboot.belzedev.it.exceptions.EmailAlreadyExistsException;
+import springboot.belzedev.it.exceptions.HashingCapacityExceededException;
 import springboot.belzedev.it.exceptions.InvalidEmailException;
 import springboot.belzedev.it.exceptions.PasswordTooShortException;
 import springboot.belzedev.it.exceptions.UsernameAlreadyExistsException;
 import springboot.belzedev.it.models.User;
+import springboot.belzedev.it.security.AuthMetrics;
 import springboot.belzedev.it.services.LoginRegisterService;
+import springboot.belzedev.it.services.UserAvailabilityIndex;
+import springboot.belzedev.it.utils.FutureUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller per la gestione delle richieste di registrazione degli utenti.
@@ -26,32 +35,75 @@ public class RegisterController {
     @Autowired
     private LoginRegisterService loginRegisterService;
 
+    // Inietta le metriche di durata ed esito dell'autenticazione
+    @Autowired
+    private AuthMetrics authMetrics;
+
+    // Inietta l'indice in memoria di username ed email già registrati
+    @Autowired
+    private UserAvailabilityIndex availabilityIndex;
+
     /**
      * Gestisce la richiesta di registrazione di un nuovo utente.
      * Registra l'utente e restituisce una risposta HTTP con lo stato dell'operazione.
+     * L'hashing della password avviene in modo asincrono, senza occupare il thread della richiesta.
      *
      * @param user l'oggetto User contenente le informazioni dell'utente da registrare
-     * @return una risposta HTTP con uno stato e un messaggio che indica il risultato dell'operazione
+     * @return un future con una risposta HTTP con uno stato e un messaggio che indica il risultato dell'operazione
      */
     @PostMapping
-    public ResponseEntity<ApiResponse> register(@RequestBody User user){
-        try{
-            // Tenta di registrare l'utente utilizzando il servizio di registrazione
-            loginRegisterService.register(user);
-            // Restituisce una risposta con stato 201 (CREATED) se la registrazione ha successo
-            return ResponseEntity.status(HttpStatus.CREATED)
-                    .body(new ApiResponse("Utente aggiunto con successo", true));
+    public CompletableFuture<ResponseEntity<ApiResponse>> register(@RequestBody User user){
+        // Tenta di registrare l'utente utilizzando il servizio di registrazione
+        return authMetrics.record("register", () -> loginRegisterService.register(user)
+                // Restituisce una risposta con stato 201 (CREATED) se la registrazione ha successo
+                .thenApply(v -> ResponseEntity.status(HttpStatus.CREATED)
+                        .body(new ApiResponse("Utente aggiunto con successo", true)))
+                .exceptionally(this::errorResponse));
+    }
+
+    /**
+     * Verifica se username e/o email sono ancora liberi, ad esempio mentre l'utente compila il modulo di registrazione.
+     * Un valore escluso dall'indice in memoria viene confermato come libero senza accedere al database.
+     *
+     * @param username lo username da verificare (opzionale)
+     * @param email l'email da verificare (opzionale)
+     * @return per ogni parametro fornito, {@code true} se il valore è libero
+     */
+    @GetMapping("/availability")
+    public Map<String, Boolean> availability(@RequestParam(required = false) String username,
+                                             @RequestParam(required = false) String email){
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        if(username != null && !username.isBlank()){
+            result.put("username", availabilityIndex.isUsernameAvailable(username.trim()));
+        }
+        if(email != null && !email.isBlank()){
+            result.put("email", availabilityIndex.isEmailAvailable(email.trim()));
         }
-        catch (EmailAlreadyExistsException | PasswordTooShortException | InvalidEmailException
-               | UsernameAlreadyExistsException e){
+        return result;
+    }
+
+    /**
+     * Converte un errore della registrazione nella risposta HTTP corrispondente.
+     *
+     * @param throwable l'errore prodotto dal future di registrazione
+     * @return la risposta HTTP di errore
+     */
+    private ResponseEntity<ApiResponse> errorResponse(Throwable throwable){
+        Throwable e = FutureUtils.unwrap(throwable);
+        if(e instanceof EmailAlreadyExistsException || e instanceof PasswordTooShortException
+                || e instanceof InvalidEmailException || e instanceof UsernameAlreadyExistsException){
             // Gestisce le eccezioni specifiche e restituisce una risposta con stato 400 (BAD REQUEST) con il messaggio dell'eccezione
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(new ApiResponse(e.getMessage(), false));
         }
-        catch (Exception e){
-            // Gestisce eventuali altre eccezioni e restituisce una risposta con stato 400 (BAD REQUEST) e un messaggio di errore generico
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(new ApiResponse(ErrorsResponse.SERVER_ERROR.name(), false));
+        if(e instanceof HashingCapacityExceededException busy){
+            // Se la coda di hashing è piena, restituisce una risposta HTTP 503 con l'header Retry-After
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(busy.getRetryAfterSeconds()))
+                    .body(new ApiResponse(busy.getMessage(), false));
         }
+        // Gestisce eventuali altre eccezioni e restituisce una risposta con stato 400 (BAD REQUEST) e un messaggio di errore generico
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new ApiResponse(ErrorsResponse.SERVER_ERROR.name(), false));
     }
 }
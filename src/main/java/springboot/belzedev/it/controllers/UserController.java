@@ -1,22 +1,41 @@
 package springboot.belzedev.it.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import springboot.belzedev.it.dto.ApiResponse;
+import springboot.belzedev.it.dto.UserPage;
+import springboot.belzedev.it.dto.UserPreferences;
 import springboot.belzedev.it.exceptions.EmailAlreadyExistsException;
+import springboot.belzedev.it.exceptions.HashingCapacityExceededException;
 import springboot.belzedev.it.exceptions.InvalidEmailException;
+import springboot.belzedev.it.exceptions.InvalidLangException;
 import springboot.belzedev.it.exceptions.PasswordTooShortException;
 import springboot.belzedev.it.exceptions.UsernameAlreadyExistsException;
 import springboot.belzedev.it.models.User;
+import springboot.belzedev.it.services.UserImportService;
 import springboot.belzedev.it.services.UserService;
+import springboot.belzedev.it.services.UserVersionIndex;
+import springboot.belzedev.it.utils.FutureUtils;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller per la gestione delle operazioni sugli utenti.
  * Fornisce endpoint per ottenere, aggiungere, aggiornare e eliminare utenti.
+ * Le GET di un utente e dell'elenco restituiscono un ETag e rispondono 304 (NOT MODIFIED) a un {@code If-None-Match}
+ * ancora valido, usando le versioni in memoria senza leggere il database.
  */
 @RestController
 @CrossOrigin(origins = "https://feangukartk.up.railway.app")
@@ -27,57 +46,159 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    // Inietta il servizio per l'import massivo degli utenti
+    @Autowired
+    private UserImportService userImportService;
+
+    // Inietta l'indice delle versioni, da cui derivano gli ETag
+    @Autowired
+    private UserVersionIndex versionIndex;
+
+    // Serializza le righe della risposta in streaming
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
-     * Recupera tutti gli utenti.
+     * Recupera una pagina di utenti, senza password, ordinati per ID.
+     * Per ottenere la pagina successiva si passa come {@code after} il {@code nextCursor} della risposta.
      *
-     * @return una lista di utenti
+     * @param after l'ID dell'ultimo utente già ricevuto (assente per la prima pagina)
+     * @param limit il numero di utenti per pagina (assente per il valore di default)
+     * @param request la richiesta, con l'eventuale header {@code If-None-Match}
+     * @return la pagina di utenti con il cursore della pagina successiva e il suo ETag,
+     *         oppure 304 (NOT MODIFIED) se la pagina non è cambiata
      */
     @GetMapping
-    public List<User> getAllUsers(){
-        return userService.getAllUsers();
+    public ResponseEntity<UserPage> getUsers(@RequestParam(required = false) Long after,
+                                             @RequestParam(required = false) Integer limit,
+                                             WebRequest request){
+        long cursor = after == null ? 0L : after;
+        int size = userService.pageSize(limit);
+        String etag = versionIndex.getPageETag(cursor, size);
+        if(etag != null && request.checkNotModified(etag)){
+            // La risposta 304 con l'ETag è già stata preparata
+            return null;
+        }
+        UserPage page = userService.getUsers(cursor, size);
+        return ResponseEntity.ok()
+                .eTag(versionIndex.recordPage(cursor, size, page))
+                .body(page);
+    }
+
+    /**
+     * Restituisce tutti gli utenti, senza password, in formato NDJSON (un oggetto JSON per riga).
+     * Le righe vengono scritte man mano che sono lette dal database, senza caricare l'intero elenco in memoria.
+     *
+     * @return una risposta HTTP che scrive gli utenti in streaming
+     */
+    @GetMapping(value = "/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamUsers(){
+        StreamingResponseBody body = out -> userService.streamUsers(user -> {
+            try{
+                out.write(objectMapper.writeValueAsBytes(user));
+                out.write('\n');
+            }
+            catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
     }
 
     /**
      * Recupera un utente specifico per ID.
      *
      * @param id l'ID dell'utente da recuperare
-     * @return una risposta HTTP con lo stato e i dettagli dell'utente se trovato, altrimenti una risposta HTTP 404 (NOT FOUND)
+     * @param request la richiesta, con l'eventuale header {@code If-None-Match}
+     * @return una risposta HTTP con lo stato, l'ETag e i dettagli dell'utente se trovato,
+     *         304 (NOT MODIFIED) se l'utente non è cambiato, altrimenti una risposta HTTP 404 (NOT FOUND)
      */
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUser(@PathVariable Long id){
+    public ResponseEntity<User> getUser(@PathVariable Long id, WebRequest request){
+        String etag = versionIndex.getUserETag(id);
+        if(etag != null && request.checkNotModified(etag)){
+            // La risposta 304 con l'ETag è già stata preparata
+            return null;
+        }
         User user = userService.getUser(id);
         if(user != null){
-            return ResponseEntity.ok(user);
+            return ResponseEntity.ok()
+                    .eTag(versionIndex.recordUser(user))
+                    .body(user);
         }
         return ResponseEntity.notFound().build();
     }
 
     /**
      * Aggiunge un nuovo utente.
+     * L'hashing della password avviene in modo asincrono, senza occupare il thread della richiesta.
      *
      * @param user l'oggetto User contenente i dettagli del nuovo utente
-     * @return una risposta HTTP con lo stato dell'operazione di aggiunta
+     * @return un future con una risposta HTTP con lo stato dell'operazione di aggiunta
      */
     @PostMapping
-    public ResponseEntity<ApiResponse> addUser(@RequestBody User user){
-        try{
-            // Tenta di aggiungere il nuovo utente
-            userService.addUser(user);
-            // Restituisce una risposta con stato 201 (CREATED) se l'utente è stato aggiunto con successo
-            return ResponseEntity.status(HttpStatus.CREATED)
-                    .body(new ApiResponse("User aggiunto con successo", true));
-        }
-        catch (EmailAlreadyExistsException | PasswordTooShortException | InvalidEmailException
-               | UsernameAlreadyExistsException e){
-            // Gestisce le eccezioni specifiche e restituisce una risposta con stato 400 (BAD REQUEST) con il messaggio dell'eccezione
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(new ApiResponse(e.getMessage(), false));
-        }
-        catch (Exception e){
-            // Gestisce eventuali altre eccezioni e restituisce una risposta con stato 400 (BAD REQUEST) e un messaggio di errore generico
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(new ApiResponse("Errore interno del server", false));
-        }
+    public CompletableFuture<ResponseEntity<ApiResponse>> addUser(@RequestBody User user){
+        // Tenta di aggiungere il nuovo utente
+        return userService.addUser(user)
+                // Restituisce una risposta con stato 201 (CREATED) se l'utente è stato aggiunto con successo
+                .thenApply(v -> ResponseEntity.status(HttpStatus.CREATED)
+                        .body(new ApiResponse("User aggiunto con successo", true)))
+                .exceptionally(throwable -> {
+                    Throwable e = FutureUtils.unwrap(throwable);
+                    if(e instanceof EmailAlreadyExistsException || e instanceof PasswordTooShortException
+                            || e instanceof InvalidEmailException || e instanceof UsernameAlreadyExistsException){
+                        // Gestisce le eccezioni specifiche e restituisce una risposta con stato 400 (BAD REQUEST) con il messaggio dell'eccezione
+                        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                .body(new ApiResponse(e.getMessage(), false));
+                    }
+                    if(e instanceof HashingCapacityExceededException busy){
+                        // Se la coda di hashing è piena, restituisce una risposta HTTP 503 con l'header Retry-After
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .header(HttpHeaders.RETRY_AFTER, String.valueOf(busy.getRetryAfterSeconds()))
+                                .body(new ApiResponse(busy.getMessage(), false));
+                    }
+                    // Gestisce eventuali altre eccezioni e restituisce una risposta con stato 400 (BAD REQUEST) e un messaggio di errore generico
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                            .body(new ApiResponse("Errore interno del server", false));
+                });
+    }
+
+    /**
+     * Importa in blocco gli utenti contenuti nel corpo della richiesta, in formato NDJSON o CSV
+     * (con {@code Content-Type: text/csv}). Il file viene letto in streaming e il report viene scritto
+     * in NDJSON man mano che i lotti vengono importati, con l'esito di ogni riga.
+     * Riservato agli operatori con il permesso {@link UserImportService#AUTHORITY} (vedi SecurityConfig).
+     *
+     * @param request la richiesta HTTP con il file da importare
+     * @return una risposta HTTP che scrive il report in streaming
+     * @throws IOException se non è possibile leggere il corpo della richiesta
+     */
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"}, produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> importUsers(HttpServletRequest request) throws IOException {
+        boolean csv = request.getContentType() != null && request.getContentType().startsWith("text/csv");
+        InputStream input = request.getInputStream();
+        StreamingResponseBody body = out -> {
+            try{
+                userImportService.importUsers(input, csv, result -> {
+                    try{
+                        out.write(objectMapper.writeValueAsBytes(result));
+                        out.write('\n');
+                        out.flush();
+                    }
+                    catch (IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
     }
 
     /**
@@ -85,14 +206,62 @@ public class UserController {
      *
      * @param user l'oggetto User contenente i nuovi dettagli dell'utente
      * @param id l'ID dell'utente da aggiornare
-     * @return una risposta HTTP con stato 204 (NO CONTENT) se l'aggiornamento ha successo
+     * @return una risposta HTTP con stato 204 (NO CONTENT) se l'aggiornamento ha successo,
+     *         oppure 409 (CONFLICT) se l'utente è stato modificato da un'altra richiesta nel frattempo
      */
     @PutMapping("/{id}")
     public ResponseEntity<Void> updateUser(@RequestBody User user, @PathVariable Long id){
-        userService.updateUser(user, id);
+        try{
+            userService.updateUser(user, id);
+        }
+        catch (ObjectOptimisticLockingFailureException e){
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
+    /**
+     * Modifica le preferenze dell'utente (tema e lingua) presenti nel corpo, lasciando invariati gli altri campi.
+     * Con l'header {@code If-Match} (l'ETag ricevuto dalla GET)
+     * l'update viene applicato solo se l'utente non è stato modificato nel frattempo.
+     *
+     * @param preferences le preferenze da modificare; i campi assenti restano invariati
+     * @param id l'ID dell'utente da aggiornare
+     * @param ifMatch l'ETag atteso dell'utente, se presente
+     * @return una risposta HTTP con stato 204 (NO CONTENT) se l'aggiornamento ha successo,
+     *         400 (BAD REQUEST) se la lingua non è valida, 404 (NOT FOUND) se l'utente non esiste,
+     *         oppure 412 (PRECONDITION FAILED) se l'ETag non corrisponde più all'utente
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<ApiResponse> updatePreferences(@RequestBody UserPreferences preferences, @PathVariable Long id,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        Long expectedVersion = null;
+        if(ifMatch != null && !ifMatch.trim().equals("*")){
+            expectedVersion = UserVersionIndex.versionOf(ifMatch, id);
+            if(expectedVersion == null){
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        }
+        try{
+            if(!userService.updatePreferences(id, preferences, expectedVersion)){
+                return ResponseEntity.notFound().build();
+            }
+        }
+        catch (InvalidLangException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ApiResponse(e.getMessage(), false));
+        }
+        catch (ObjectOptimisticLockingFailureException e){
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.NO_CONTENT);
+        if(expectedVersion != null && preferences.hasChanges()){
+            // La nuova versione è nota senza rileggere l'utente
+            response.eTag(UserVersionIndex.etag(id, expectedVersion + 1));
+        }
+        return response.build();
+    }
+
     /**
      * Elimina un utente specifico per ID.
      *
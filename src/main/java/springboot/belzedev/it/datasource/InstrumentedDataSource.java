@@ -0,0 +1,200 @@
+package springboot.belzedev.it.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * DataSource che misura ogni istruzione JDBC eseguita sulle sue connessioni e la passa a {@link StatementMetrics},
+ * insieme ai parametri impostati sulla PreparedStatement. Connessioni e statement vengono avvolti in proxy
+ * dinamici solo dopo {@link #setMetrics}: quelli ottenuti prima non sono misurati.
+ */
+public class InstrumentedDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private volatile StatementMetrics metrics;
+
+    /**
+     * @param targetDataSource il DataSource da misurare
+     */
+    public InstrumentedDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    /**
+     * Attiva la misura delle istruzioni.
+     *
+     * @param metrics il componente che registra le istruzioni eseguite
+     */
+    public void setMetrics(StatementMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return instrument(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return instrument(super.getConnection(username, password));
+    }
+
+    /**
+     * Chiude il DataSource avvolto (ad esempio il pool), dato che il bean registrato è questo.
+     */
+    @Override
+    public void close() throws Exception {
+        if(obtainTargetDataSource() instanceof AutoCloseable closeable){
+            closeable.close();
+        }
+    }
+
+    private Connection instrument(Connection connection) {
+        StatementMetrics current = metrics;
+        if(current == null){
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection, current));
+    }
+
+    // Invoca il metodo sull'oggetto reale, propagando l'eccezione originale
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try{
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e){
+            throw e.getTargetException();
+        }
+    }
+
+    // unwrap e isWrapperFor devono riconoscere anche l'interfaccia implementata dal proxy
+    private static Object unwrap(Object proxy, Object target, Method method, Object[] args) throws Throwable {
+        Class<?> iface = (Class<?>) args[0];
+        if(iface.isInstance(proxy)){
+            return method.getName().equals("unwrap") ? proxy : Boolean.TRUE;
+        }
+        return invokeTarget(target, method, args);
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final StatementMetrics metrics;
+
+        ConnectionHandler(Connection target, StatementMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if(name.equals("unwrap") || name.equals("isWrapperFor")){
+                return unwrap(proxy, target, method, args);
+            }
+            Object result = invokeTarget(target, method, args);
+            Class<?> type = switch(name){
+                case "prepareCall" -> CallableStatement.class;
+                case "prepareStatement" -> PreparedStatement.class;
+                case "createStatement" -> Statement.class;
+                default -> null;
+            };
+            if(type == null){
+                return result;
+            }
+            String sql = type != Statement.class ? (String) args[0] : null;
+            return Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(),
+                    new Class<?>[]{type}, new StatementHandler((Statement) result, sql, metrics));
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final StatementMetrics metrics;
+        // Istruzione preparata, oppure l'ultima aggiunta al batch di una Statement semplice
+        private String sql;
+        // Parametri della riga corrente e della prima riga del batch
+        private Object[] binds;
+        private Object[] firstBatchBinds;
+        private int batchSize;
+
+        StatementHandler(Statement target, String sql, StatementMetrics metrics) {
+            this.target = target;
+            this.sql = sql;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if(name.startsWith("execute")){
+                return execute(method, args);
+            }
+            if(name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index){
+                bind(index, name.equals("setNull") ? null : args[1]);
+            }
+            else if(name.equals("clearParameters")){
+                binds = null;
+            }
+            else if(name.equals("addBatch")){
+                if(args != null && args.length == 1){
+                    sql = (String) args[0];
+                }
+                // Le righe successive possono riusare i parametri: quelli della prima vengono copiati
+                if(batchSize++ == 0 && binds != null){
+                    firstBatchBinds = binds;
+                    binds = binds.clone();
+                }
+            }
+            else if(name.equals("clearBatch")){
+                batchSize = 0;
+                firstBatchBinds = null;
+            }
+            else if(name.equals("unwrap") || name.equals("isWrapperFor")){
+                return unwrap(proxy, target, method, args);
+            }
+            return invokeTarget(target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String executed = args != null && args.length > 0 && args[0] instanceof String statement ? statement : sql;
+            boolean batch = method.getName().endsWith("Batch");
+            long start = System.nanoTime();
+            boolean failed = true;
+            try{
+                Object result = invokeTarget(target, method, args);
+                failed = false;
+                return result;
+            }
+            finally{
+                long nanos = System.nanoTime() - start;
+                metrics.record(executed, nanos, batch ? firstBatchBinds : binds, batch ? batchSize : 0, failed);
+                if(batch){
+                    batchSize = 0;
+                    firstBatchBinds = null;
+                }
+            }
+        }
+
+        private void bind(int index, Object value) {
+            // Array lungo esattamente quanto l'ultimo parametro impostato, come riportato nel log
+            if(binds == null){
+                binds = new Object[index];
+            }
+            else if(index > binds.length){
+                binds = Arrays.copyOf(binds, index);
+            }
+            binds[index - 1] = value;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package springboot.belzedev.it.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * DataSource che invia le transazioni in sola lettura alle repliche, a rotazione, e tutto il resto al primario.
+ * Una replica viene scelta solo se il suo ritardo misurato rientra in quello tollerato dalla transazione
+ * (vedi {@link ReplicaRouting}); altrimenti, o se la lettura è vincolata al primario, si usa il primario.
+ * Va avvolto in un {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, così la connessione
+ * viene scelta alla prima istruzione, quando il flag di sola lettura della transazione è già impostato.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+
+    // Ritardo misurato di ogni replica in millisecondi; Long.MAX_VALUE finché non è noto o se la replica non risponde
+    private final AtomicLongArray lagMillis;
+
+    // Ritardo tollerato dalle transazioni senza etichetta
+    private final long defaultMaxLagMillis;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param primary il pool del primario, per le scritture e le letture vincolate
+     * @param replicas i pool delle repliche
+     * @param defaultMaxLag il ritardo di replica tollerato dalle transazioni in sola lettura senza etichetta
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration defaultMaxLag) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.lagMillis = new AtomicLongArray(replicas.size());
+        for(int i = 0; i < replicas.size(); i++){
+            lagMillis.set(i, Long.MAX_VALUE);
+        }
+        this.defaultMaxLagMillis = defaultMaxLag.toMillis();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for(int i = 0; i < replicas.size(); i++){
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if(!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReplicaRouting.isPinnedToPrimary()){
+            return PRIMARY;
+        }
+        Duration maxLag = ReplicaRouting.currentMaxLag();
+        long maxLagMillis = maxLag != null ? maxLag.toMillis() : defaultMaxLagMillis;
+        int count = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(count, 1));
+        for(int i = 0; i < count; i++){
+            int replica = (start + i) % count;
+            if(lagMillis.get(replica) <= maxLagMillis){
+                return replica;
+            }
+        }
+        return PRIMARY;
+    }
+
+    /**
+     * Aggiorna il ritardo misurato della replica.
+     *
+     * @param replica l'indice della replica
+     * @param lag il ritardo misurato in millisecondi, {@link Long#MAX_VALUE} se la replica non è utilizzabile
+     */
+    public void updateLag(int replica, long lag) {
+        lagMillis.set(replica, lag);
+    }
+
+    /**
+     * Restituisce il ritardo misurato della replica.
+     *
+     * @param replica l'indice della replica
+     * @return il ritardo in millisecondi, {@link Long#MAX_VALUE} se la replica non è utilizzabile
+     */
+    public long getLag(int replica) {
+        return lagMillis.get(replica);
+    }
+
+    /**
+     * Restituisce i pool delle repliche, nell'ordine dei loro indici.
+     *
+     * @return le repliche
+     */
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Chiude i pool del primario e delle repliche alla chiusura del contesto.
+     */
+    @Override
+    public void close() {
+        closeQuietly(primary);
+        replicas.forEach(ReadWriteRoutingDataSource::closeQuietly);
+    }
+
+    private static void closeQuietly(DataSource dataSource) {
+        if(dataSource instanceof AutoCloseable closeable){
+            try{
+                closeable.close();
+            }
+            catch (Exception e){
+                log.warn("Chiusura del pool fallita: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package springboot.belzedev.it.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Misura periodicamente il ritardo di ogni replica e lo comunica a {@link ReadWriteRoutingDataSource}.
+ * Su MySQL la query di default legge {@code Seconds_Behind_Source} da {@code SHOW REPLICA STATUS};
+ * una replica che non risponde o con la replicazione ferma viene esclusa finché non torna disponibile.
+ * Con una query vuota (es. database embedded usati in locale) il ritardo è sempre zero.
+ */
+public class ReplicaLagMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private static final String LAG_COLUMN = "Seconds_Behind_Source";
+
+    private final ReadWriteRoutingDataSource routingDataSource;
+    private final List<JdbcTemplate> replicas;
+    private final String lagQuery;
+
+    /**
+     * @param routingDataSource il DataSource che instrada le letture
+     * @param lagQuery la query che restituisce lo stato della replica, vuota per considerarla sempre allineata
+     * @param registry il registro delle metriche
+     */
+    public ReplicaLagMonitor(ReadWriteRoutingDataSource routingDataSource, String lagQuery, MeterRegistry registry) {
+        this.routingDataSource = routingDataSource;
+        this.replicas = routingDataSource.getReplicas().stream().map(JdbcTemplate::new).toList();
+        this.lagQuery = lagQuery;
+        for(int i = 0; i < replicas.size(); i++){
+            int replica = i;
+            Gauge.builder("datasource.replica.lag", routingDataSource, ds -> lagSeconds(ds.getLag(replica)))
+                    .description("Ritardo misurato della replica, -1 se non utilizzabile")
+                    .baseUnit("seconds")
+                    .tag("replica", String.valueOf(replica))
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Aggiorna il ritardo di tutte le repliche.
+     */
+    @Scheduled(fixedDelayString = "${datasource.replica.lag-check-interval-ms:1000}")
+    public void check() {
+        for(int i = 0; i < replicas.size(); i++){
+            routingDataSource.updateLag(i, measure(replicas.get(i), i));
+        }
+    }
+
+    private long measure(JdbcTemplate replica, int index) {
+        try{
+            if(lagQuery == null || lagQuery.isBlank()){
+                replica.execute("select 1");
+                return 0;
+            }
+            Long lagSeconds = replica.query(lagQuery, (ResultSetExtractor<Long>) rs -> {
+                // Nessuna riga: il server non replica da nessuno, quindi è allineato con sé stesso
+                if(!rs.next()){
+                    return 0L;
+                }
+                long value = rs.getLong(LAG_COLUMN);
+                // NULL: replicazione ferma
+                return rs.wasNull() ? null : value;
+            });
+            return lagSeconds != null ? lagSeconds * 1000 : Long.MAX_VALUE;
+        }
+        catch (DataAccessException e){
+            log.warn("Replica {} non raggiungibile, letture inviate al primario: {}", index, e.getMessage());
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static double lagSeconds(long lagMillis) {
+        return lagMillis == Long.MAX_VALUE ? -1 : lagMillis / 1000.0;
+    }
+}
@@ -0,0 +1,99 @@
+package springboot.belzedev.it.datasource;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+/**
+ * Stato per thread usato da {@link ReadWriteRoutingDataSource} per scegliere tra primario e repliche.
+ * Una transazione in sola lettura può indicare il ritardo massimo di replica che tollera con l'etichetta
+ * {@code replica.max-lag=<durata>}, ad esempio {@code @Transactional(readOnly = true, label = "replica.max-lag=30s")};
+ * le letture che devono vedere le proprie scritture si eseguono con {@link #onPrimary(Supplier)}.
+ */
+public final class ReplicaRouting {
+
+    /**
+     * Prefisso dell'etichetta di transazione con il ritardo massimo tollerato.
+     */
+    public static final String MAX_LAG_LABEL = "replica.max-lag=";
+
+    // Nessuna etichetta: si applica il ritardo massimo di default
+    private static final Duration DEFAULT_MAX_LAG = Duration.ofMillis(-1);
+
+    // Ritardi tollerati dalle transazioni fisiche aperte sul thread, la più interna in cima
+    private static final ThreadLocal<Deque<Duration>> MAX_LAGS = ThreadLocal.withInitial(ArrayDeque::new);
+
+    // Profondità delle sezioni che devono leggere dal primario
+    private static final ThreadLocal<int[]> PINNED = ThreadLocal.withInitial(() -> new int[1]);
+
+    private ReplicaRouting() {}
+
+    /**
+     * Esegue l'operazione leggendo sempre dal primario, anche nelle transazioni in sola lettura avviate al suo interno.
+     *
+     * @param work l'operazione da eseguire
+     * @return il risultato dell'operazione
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        int[] depth = PINNED.get();
+        depth[0]++;
+        try{
+            return work.get();
+        }
+        finally{
+            depth[0]--;
+        }
+    }
+
+    /**
+     * Indica se il thread corrente è in una sezione che deve leggere dal primario.
+     *
+     * @return {@code true} se le letture vanno al primario
+     */
+    public static boolean isPinnedToPrimary() {
+        return PINNED.get()[0] > 0;
+    }
+
+    /**
+     * Restituisce il ritardo massimo tollerato dalla transazione corrente.
+     *
+     * @return il ritardo indicato dall'etichetta, oppure {@code null} per usare quello di default
+     */
+    public static Duration currentMaxLag() {
+        Duration maxLag = MAX_LAGS.get().peek();
+        return maxLag == null || maxLag == DEFAULT_MAX_LAG ? null : maxLag;
+    }
+
+    /**
+     * Registra l'inizio di una transazione fisica, leggendone l'eventuale etichetta sul ritardo massimo.
+     *
+     * @param definition la definizione della transazione
+     */
+    static void begin(TransactionDefinition definition) {
+        Duration maxLag = DEFAULT_MAX_LAG;
+        if(definition instanceof TransactionAttribute attribute){
+            for(String label : attribute.getLabels()){
+                if(label.startsWith(MAX_LAG_LABEL)){
+                    maxLag = DurationStyle.detectAndParse(label.substring(MAX_LAG_LABEL.length()).trim());
+                }
+            }
+        }
+        MAX_LAGS.get().push(maxLag);
+    }
+
+    /**
+     * Registra la fine della transazione fisica più interna.
+     */
+    static void end() {
+        Deque<Duration> maxLags = MAX_LAGS.get();
+        maxLags.poll();
+        if(maxLags.isEmpty()){
+            MAX_LAGS.remove();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package springboot.belzedev.it.datasource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tiene traccia, per il thread corrente, del metodo del repository in esecuzione (ad esempio
+ * {@code UserRepository.findByUsername}), usato da {@link StatementMetrics} come origine delle istruzioni JDBC.
+ * Le istruzioni eseguite fuori da un repository (flush al commit, JdbcTemplate) hanno origine {@value #NONE}.
+ */
+public final class RepositoryOrigin implements MethodInterceptor {
+
+    /**
+     * L'origine delle istruzioni eseguite fuori da un metodo di repository.
+     */
+    public static final String NONE = "none";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private final String repository;
+
+    // Etichetta già calcolata per ogni metodo del repository
+    private final ConcurrentHashMap<Method, String> labels = new ConcurrentHashMap<>();
+
+    /**
+     * @param repositoryInterface l'interfaccia del repository su cui è installato l'interceptor
+     */
+    public RepositoryOrigin(Class<?> repositoryInterface) {
+        this.repository = repositoryInterface.getSimpleName();
+    }
+
+    /**
+     * @return il metodo del repository in esecuzione sul thread corrente, oppure {@value #NONE}
+     */
+    public static String current() {
+        String origin = CURRENT.get();
+        return origin != null ? origin : NONE;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        // Un repository chiamato da un altro (metodi default, frammenti) mantiene l'origine più esterna
+        if(CURRENT.get() != null){
+            return invocation.proceed();
+        }
+        CURRENT.set(labels.computeIfAbsent(invocation.getMethod(), method -> repository + "." + method.getName()));
+        try{
+            return invocation.proceed();
+        }
+        finally{
+            CURRENT.remove();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package springboot.belzedev.it.datasource;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * {@link JpaTransactionManager} che rende disponibile a {@link ReadWriteRoutingDataSource} il ritardo di replica
+ * tollerato da ogni transazione fisica, letto dalle etichette della sua definizione.
+ */
+public class RoutingJpaTransactionManager extends JpaTransactionManager {
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        ReplicaRouting.begin(definition);
+        try{
+            super.doBegin(transaction, definition);
+        }
+        catch (RuntimeException | Error e){
+            ReplicaRouting.end();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try{
+            super.doCleanupAfterCompletion(transaction);
+        }
+        finally{
+            ReplicaRouting.end();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package springboot.belzedev.it.datasource;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Installa la misura delle istruzioni JDBC: avvolge il DataSource principale in un {@link InstrumentedDataSource}
+ * e aggiunge a ogni repository Spring Data l'interceptor {@link RepositoryOrigin}.
+ * La misura parte quando tutti i singleton sono stati creati, così {@link StatementMetrics}
+ * (e il registro delle metriche da cui dipende) non viene creato durante l'inizializzazione del DataSource.
+ */
+public class StatementInstrumentationPostProcessor implements BeanPostProcessor, BeanFactoryAware, SmartInitializingSingleton {
+
+    // Il bean del DataSource usato da JPA e JDBC, sia quello di Spring Boot sia quello con le repliche
+    private static final String DATA_SOURCE_BEAN = "dataSource";
+
+    private final List<InstrumentedDataSource> instrumented = new ArrayList<>();
+
+    private BeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        // Prima di afterPropertiesSet, che crea il repository
+        if(bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean){
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, information) -> proxyFactory.addAdvice(new RepositoryOrigin(information.getRepositoryInterface()))));
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if(DATA_SOURCE_BEAN.equals(beanName) && bean instanceof DataSource dataSource && !(bean instanceof InstrumentedDataSource)){
+            InstrumentedDataSource wrapper = new InstrumentedDataSource(dataSource);
+            instrumented.add(wrapper);
+            return wrapper;
+        }
+        return bean;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        StatementMetrics metrics = beanFactory.getBean(StatementMetrics.class);
+        for(InstrumentedDataSource dataSource : instrumented){
+            dataSource.setMetrics(metrics);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package springboot.belzedev.it.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
+
+import java.time.Duration;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Registra la latenza di ogni istruzione JDBC nel timer {@code db.statement}, con i tag {@code sql}
+ * (l'istruzione normalizzata, senza letterali) e {@code origin} (il metodo del repository che l'ha eseguita,
+ * vedi {@link RepositoryOrigin}). Le istruzioni più lente della soglia, e un campione casuale delle altre,
+ * vengono scritte sul logger {@value #LOGGER} come coppie chiave-valore, con i parametri oscurati.
+ * Il numero di serie è limitato: oltre il massimo le nuove istruzioni confluiscono nel tag {@code sql=other}.
+ */
+public class StatementMetrics {
+
+    /**
+     * Il logger delle istruzioni lente e campionate, con un appender asincrono dedicato (vedi logback-spring.xml).
+     */
+    public static final String LOGGER = "sql.statements";
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER);
+
+    private static final String OTHER = "other";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final MeterRegistry registry;
+    private final long slowThresholdNanos;
+    private final double sampleRate;
+    private final int maxSeries;
+
+    // Istruzione originale -> normalizzata; Hibernate e JdbcTemplate usano un insieme limitato di istruzioni
+    private final ConcurrentHashMap<String, String> normalized = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<SeriesKey, Timer> timers = new ConcurrentHashMap<>();
+
+    private record SeriesKey(String sql, String origin) {}
+
+    /**
+     * @param registry il registro delle metriche
+     * @param slowThreshold la durata oltre la quale un'istruzione viene sempre scritta nel log
+     * @param sampleRate la frazione (tra 0 e 1) delle altre istruzioni scritte nel log
+     * @param maxSeries il numero massimo di coppie istruzione-origine con un timer dedicato
+     */
+    public StatementMetrics(MeterRegistry registry, Duration slowThreshold, double sampleRate, int maxSeries) {
+        this.registry = registry;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.sampleRate = sampleRate;
+        this.maxSeries = maxSeries;
+    }
+
+    /**
+     * Registra un'istruzione eseguita.
+     *
+     * @param sql l'istruzione, così come inviata al driver
+     * @param nanos la durata dell'esecuzione
+     * @param binds i parametri, per posizione (l'indice 0 corrisponde al parametro 1); può essere null
+     * @param batchSize il numero di righe del batch, 0 se l'istruzione non è in batch
+     * @param failed se l'esecuzione ha lanciato un'eccezione
+     */
+    public void record(String sql, long nanos, Object[] binds, int batchSize, boolean failed) {
+        String origin = RepositoryOrigin.current();
+        String normalizedSql = normalize(sql);
+        timer(normalizedSql, origin).record(nanos, TimeUnit.NANOSECONDS);
+
+        boolean slow = nanos >= slowThresholdNanos;
+        if(!slow && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)){
+            return;
+        }
+        if(slow ? log.isWarnEnabled() : log.isInfoEnabled()){
+            LoggingEventBuilder event = slow ? log.atWarn() : log.atInfo();
+            event.addKeyValue("origin", origin)
+                    .addKeyValue("millis", String.format("%.3f", nanos / 1_000_000.0))
+                    .addKeyValue("slow", slow)
+                    .addKeyValue("failed", failed)
+                    .addKeyValue("batch", batchSize)
+                    .addKeyValue("sql", normalizedSql)
+                    .addKeyValue("binds", redact(binds))
+                    .log(slow ? "slow statement" : "sampled statement");
+        }
+    }
+
+    /**
+     * Normalizza un'istruzione: spazi compattati, letterali sostituiti da {@code ?} e liste {@code in (?, ?, ...)}
+     * ridotte a {@code in (?)}, così le varianti della stessa istruzione finiscono nella stessa serie.
+     *
+     * @param sql l'istruzione originale
+     * @return l'istruzione normalizzata
+     */
+    public String normalize(String sql) {
+        if(sql == null){
+            return OTHER;
+        }
+        String cached = normalized.get(sql);
+        if(cached != null){
+            return cached;
+        }
+        String result = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        result = STRING_LITERAL.matcher(result).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = IN_LIST.matcher(result).replaceAll("in (?)");
+        if(normalized.size() < maxSeries * 4){
+            normalized.putIfAbsent(sql, result);
+        }
+        return result;
+    }
+
+    /**
+     * Rappresenta i parametri senza rivelarne il contenuto: numeri, booleani e date sono riportati,
+     * stringhe e binari solo con tipo e lunghezza.
+     *
+     * @param binds i parametri, per posizione; può essere null
+     * @return la rappresentazione oscurata, ad esempio {@code [42, <string:60>, null]}
+     */
+    public static String redact(Object[] binds) {
+        if(binds == null){
+            return "[]";
+        }
+        StringBuilder result = new StringBuilder("[");
+        for(int i = 0; i < binds.length; i++){
+            if(i > 0){
+                result.append(", ");
+            }
+            Object value = binds[i];
+            if(value == null){
+                result.append("null");
+            }
+            else if(value instanceof Number || value instanceof Boolean
+                    || value instanceof TemporalAccessor || value instanceof Date){
+                result.append(value);
+            }
+            else if(value instanceof CharSequence chars){
+                result.append("<string:").append(chars.length()).append('>');
+            }
+            else if(value instanceof byte[] bytes){
+                result.append("<bytes:").append(bytes.length).append('>');
+            }
+            else{
+                result.append('<').append(value.getClass().getSimpleName()).append('>');
+            }
+        }
+        return result.append(']').toString();
+    }
+
+    private Timer timer(String sql, String origin) {
+        SeriesKey key = new SeriesKey(sql, origin);
+        Timer timer = timers.get(key);
+        if(timer != null){
+            return timer;
+        }
+        if(timers.size() >= maxSeries){
+            key = new SeriesKey(OTHER, origin);
+            timer = timers.get(key);
+            if(timer != null){
+                return timer;
+            }
+        }
+        return timers.computeIfAbsent(key, k -> Timer.builder("db.statement")
+                .description("Latenza delle istruzioni JDBC per istruzione normalizzata e metodo del repository")
+                .tag("sql", k.sql())
+                .tag("origin", k.origin())
+                .register(registry));
+    }
+}
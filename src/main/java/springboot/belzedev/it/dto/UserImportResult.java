@@ -0,0 +1,47 @@
+package springboot.belzedev.it.dto;
+
+/**
+ * Esito dell'import di una singola riga, restituito nel report dell'import massivo.
+ */
+public class UserImportResult {
+
+    // Numero della riga nel file caricato (a partire da 1, intestazione CSV inclusa)
+    private final int line;
+
+    private final String username;
+
+    // true se l'utente è stato creato
+    private final boolean success;
+
+    // Codice ErrorsResponse in caso di errore, null in caso di successo
+    private final String error;
+
+    /**
+     * @param line il numero della riga nel file
+     * @param username lo username letto dalla riga, se disponibile
+     * @param success l'esito dell'import
+     * @param error il codice di errore, oppure {@code null}
+     */
+    public UserImportResult(int line, String username, boolean success, String error) {
+        this.line = line;
+        this.username = username;
+        this.success = success;
+        this.error = error;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
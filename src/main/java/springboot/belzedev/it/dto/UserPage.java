@@ -0,0 +1,34 @@
+package springboot.belzedev.it.dto;
+
+import java.util.List;
+
+/**
+ * Pagina di utenti restituita dalla paginazione a cursore.
+ * Il cursore è l'ID dell'ultimo utente della pagina e va passato come parametro {@code after}
+ * per ottenere la pagina successiva.
+ */
+public class UserPage {
+
+    // Utenti della pagina, ordinati per ID crescente
+    private final List<UserSummary> items;
+
+    // Cursore della pagina successiva, null se questa è l'ultima pagina
+    private final Long nextCursor;
+
+    /**
+     * @param items gli utenti della pagina
+     * @param nextCursor il cursore della pagina successiva, oppure {@code null}
+     */
+    public UserPage(List<UserSummary> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<UserSummary> getItems() {
+        return items;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
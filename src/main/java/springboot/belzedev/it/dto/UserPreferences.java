@@ -0,0 +1,48 @@
+package springboot.belzedev.it.dto;
+
+/**
+ * Corpo di {@code PATCH /api/users/{id}}: le preferenze dell'utente da modificare.
+ * I campi assenti (o {@code null}) restano invariati e non compaiono nell'update.
+ */
+public class UserPreferences {
+
+    // Tema scuro (true) o chiaro (false)
+    private Boolean theme;
+
+    // Lingua dell'interfaccia
+    private String lang;
+
+    public UserPreferences() {}
+
+    /**
+     * @param theme il nuovo tema, oppure {@code null} per lasciarlo invariato
+     * @param lang la nuova lingua, oppure {@code null} per lasciarla invariata
+     */
+    public UserPreferences(Boolean theme, String lang) {
+        this.theme = theme;
+        this.lang = lang;
+    }
+
+    public Boolean getTheme() {
+        return theme;
+    }
+
+    public void setTheme(Boolean theme) {
+        this.theme = theme;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public void setLang(String lang) {
+        this.lang = lang;
+    }
+
+    /**
+     * @return {@code true} se almeno una preferenza va modificata
+     */
+    public boolean hasChanges() {
+        return theme != null || lang != null;
+    }
+}
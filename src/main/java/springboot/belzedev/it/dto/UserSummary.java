@@ -0,0 +1,62 @@
+package springboot.belzedev.it.dto;
+
+/**
+ * Proiezione in sola lettura dell'entità {@link springboot.belzedev.it.models.User}, usata negli elenchi di utenti.
+ * Non contiene l'hash della password e viene costruita direttamente dalla query, senza caricare entità gestite.
+ */
+public class UserSummary {
+
+    private final Long id_user;
+
+    private final String email;
+
+    private final String username;
+
+    private final boolean verified;
+
+    private final boolean theme;
+
+    private final String lang;
+
+    // Versione dell'utente, da cui deriva l'ETag della pagina
+    private final long version;
+
+    public UserSummary(Long id_user, String email, String username, boolean verified, boolean theme, String lang,
+                       long version) {
+        this.id_user = id_user;
+        this.email = email;
+        this.username = username;
+        this.verified = verified;
+        this.theme = theme;
+        this.lang = lang;
+        this.version = version;
+    }
+
+    public Long getId_user() {
+        return id_user;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public boolean getTheme() {
+        return theme;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
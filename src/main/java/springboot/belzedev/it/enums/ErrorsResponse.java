@@ -13,5 +13,29 @@ public enum ErrorsResponse {
     EXISTS_USERNAME,
     SHORT_PSW,
     INVALID_PSW,
-    SERVER_ERROR
+    INVALID_ROW,
+    SERVER_BUSY,
+    TOO_MANY_ATTEMPTS,
+    INVALID_TOKEN,
+    TOKEN_ALREADY_ROTATED,
+    INVALID_LANG,
+    SERVER_ERROR;
+
+    /**
+     * Restituisce il codice di errore corrispondente al messaggio di una risposta o di un'eccezione,
+     * da usare ad esempio come tag delle metriche senza introdurre valori arbitrari.
+     *
+     * @param message il messaggio, che per gli errori applicativi coincide con il nome del codice
+     * @return il codice corrispondente, oppure {@link #SERVER_ERROR} se il messaggio non è un codice noto
+     */
+    public static ErrorsResponse fromMessage(String message) {
+        if(message != null){
+            for(ErrorsResponse error : values()){
+                if(error.name().equals(message)){
+                    return error;
+                }
+            }
+        }
+        return SERVER_ERROR;
+    }
 }
@@ -0,0 +1,11 @@
+package springboot.belzedev.it.enums;
+
+/**
+ * Stato di un messaggio nella outbox delle email.
+ */
+public enum OutboxStatus {
+
+    PENDING,
+    SENT,
+    FAILED
+}
@@ -0,0 +1,27 @@
+package springboot.belzedev.it.exceptions;
+
+/**
+ * Eccezione personalizzata che viene lanciata quando la coda dell'executor dedicato all'hashing
+ * delle password è piena e la richiesta non può essere accettata.
+ * Estende {@link RuntimeException} per consentire la gestione di errori in fase di esecuzione.
+ */
+public class HashingCapacityExceededException extends RuntimeException{
+
+    // Secondi dopo i quali il client può riprovare, restituiti nell'header Retry-After
+    private final long retryAfterSeconds;
+
+    /**
+     * Costruttore per creare un'istanza di {@code HashingCapacityExceededException} con un messaggio di errore specifico.
+     *
+     * @param message Il messaggio di errore che descrive il motivo per cui è stata lanciata l'eccezione.
+     * @param retryAfterSeconds I secondi dopo i quali il client può riprovare.
+     */
+    public HashingCapacityExceededException(String message, long retryAfterSeconds){
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
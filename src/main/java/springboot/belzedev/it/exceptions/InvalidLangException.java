@@ -0,0 +1,18 @@
+package springboot.belzedev.it.exceptions;
+
+/**
+ * Eccezione personalizzata che viene lanciata quando si cerca di impostare una lingua
+ * che non è un codice di lingua valido.
+ * Estende {@link RuntimeException} per consentire la gestione di errori in fase di esecuzione.
+ */
+public class InvalidLangException extends RuntimeException{
+
+    /**
+     * Costruttore per creare un'istanza di {@code InvalidLangException} con un messaggio di errore specifico.
+     *
+     * @param message Il messaggio di errore che descrive il motivo per cui è stata lanciata l'eccezione.
+     */
+    public InvalidLangException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package springboot.belzedev.it.exceptions;
+
+/**
+ * Eccezione personalizzata che viene lanciata quando il refresh token presentato
+ * non esiste, è scaduto oppure è già stato usato.
+ * Estende {@link RuntimeException} per consentire la gestione di errori in fase di esecuzione.
+ */
+public class InvalidRefreshTokenException extends RuntimeException{
+
+    /**
+     * Costruttore per creare un'istanza di {@code InvalidRefreshTokenException} con un messaggio di errore specifico.
+     *
+     * @param message Il messaggio di errore che descrive il motivo per cui è stata lanciata l'eccezione.
+     */
+    public InvalidRefreshTokenException(String message){
+        super(message);
+    }
+}
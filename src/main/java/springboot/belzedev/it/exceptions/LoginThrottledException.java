@@ -0,0 +1,27 @@
+package springboot.belzedev.it.exceptions;
+
+/**
+ * Eccezione personalizzata che viene lanciata quando i tentativi di login per uno username
+ * o da un indirizzo IP superano il limite consentito.
+ * Estende {@link RuntimeException} per consentire la gestione di errori in fase di esecuzione.
+ */
+public class LoginThrottledException extends RuntimeException{
+
+    // Secondi dopo i quali il client può riprovare, restituiti nell'header Retry-After
+    private final long retryAfterSeconds;
+
+    /**
+     * Costruttore per creare un'istanza di {@code LoginThrottledException} con un messaggio di errore specifico.
+     *
+     * @param message Il messaggio di errore che descrive il motivo per cui è stata lanciata l'eccezione.
+     * @param retryAfterSeconds I secondi dopo i quali il client può riprovare.
+     */
+    public LoginThrottledException(String message, long retryAfterSeconds){
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
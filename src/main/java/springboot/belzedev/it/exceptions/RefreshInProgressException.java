@@ -0,0 +1,19 @@
+package springboot.belzedev.it.exceptions;
+
+/**
+ * Eccezione personalizzata che viene lanciata quando il refresh token presentato è stato ruotato
+ * da pochi secondi da una richiesta concorrente dello stesso client (es. due schede del browser).
+ * Il client deve riprovare con il refresh token ricevuto dalla richiesta che ha eseguito la rotazione.
+ * Estende {@link RuntimeException} per consentire la gestione di errori in fase di esecuzione.
+ */
+public class RefreshInProgressException extends RuntimeException{
+
+    /**
+     * Costruttore per creare un'istanza di {@code RefreshInProgressException} con un messaggio di errore specifico.
+     *
+     * @param message Il messaggio di errore che descrive il motivo per cui è stata lanciata l'eccezione.
+     */
+    public RefreshInProgressException(String message){
+        super(message);
+    }
+}
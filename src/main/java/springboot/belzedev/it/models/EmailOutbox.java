@@ -0,0 +1,125 @@
+package springboot.belzedev.it.models;
+
+import jakarta.persistence.*;
+import springboot.belzedev.it.enums.OutboxStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Questa classe rappresenta un messaggio email in attesa di invio, mappato alla tabella {@code email_outbox}.
+ * Il messaggio viene scritto nella stessa transazione dell'operazione che lo genera
+ * e inviato successivamente dal dispatcher in background.
+ */
+@Entity
+@Table(name = "email_outbox", indexes = @Index(name = "idx_email_outbox_due", columnList = "status, next_attempt_at"))
+public class EmailOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Indirizzo del destinatario.
+     */
+    private String recipient;
+
+    private String subject;
+
+    @Column(columnDefinition = "TEXT")
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    private OutboxStatus status;
+
+    /**
+     * Numero di tentativi di invio già effettuati.
+     */
+    private int attempts;
+
+    /**
+     * Istante a partire dal quale il messaggio può essere (ri)inviato.
+     */
+    private LocalDateTime next_attempt_at;
+
+    /**
+     * Ultimo errore ricevuto dal server SMTP, troncato.
+     */
+    private String last_error;
+
+    private LocalDateTime created_at;
+
+    private LocalDateTime sent_at;
+
+    public EmailOutbox(){}
+
+    public EmailOutbox(String recipient, String subject, String body) {
+        LocalDateTime now = LocalDateTime.now();
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        this.status = OutboxStatus.PENDING;
+        this.attempts = 0;
+        this.next_attempt_at = now;
+        this.created_at = now;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public OutboxStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OutboxStatus status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return next_attempt_at;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.next_attempt_at = nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return last_error;
+    }
+
+    public void setLastError(String lastError) {
+        this.last_error = lastError;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return created_at;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sent_at;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sent_at = sentAt;
+    }
+}
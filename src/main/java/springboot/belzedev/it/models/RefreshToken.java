@@ -0,0 +1,78 @@
+package springboot.belzedev.it.models;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Refresh token, mappato alla tabella {@code refresh_tokens}.
+ * Del token viene salvato solo l'hash SHA-256, cercato tramite indice univoco.
+ * I token ottenuti uno dall'altro con la rotazione condividono la stessa famiglia ({@code family}):
+ * il riuso di un token già ruotato revoca l'intera famiglia, salvo entro pochi secondi dalla sua rotazione.
+ */
+@Entity
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "uk_refresh_tokens_hash", columnList = "token_hash", unique = true),
+        @Index(name = "idx_refresh_tokens_family", columnList = "family"),
+        @Index(name = "idx_refresh_tokens_user", columnList = "id_user"),
+        @Index(name = "idx_refresh_tokens_expiry", columnList = "expires_at")
+})
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(columnDefinition = "binary(32)")
+    private byte[] token_hash;
+
+    @Column(columnDefinition = "binary(16)")
+    private byte[] family;
+
+    private Long id_user;
+
+    private LocalDateTime expires_at;
+
+    // true dopo la rotazione: il token non può più essere usato
+    private boolean used;
+
+    // Istante della rotazione, per riconoscere le richieste concorrenti del client che l'ha eseguita
+    private LocalDateTime used_at;
+
+    public RefreshToken(){}
+
+    public RefreshToken(byte[] token_hash, byte[] family, Long id_user, LocalDateTime expires_at) {
+        this.token_hash = token_hash;
+        this.family = family;
+        this.id_user = id_user;
+        this.expires_at = expires_at;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public byte[] getToken_hash() {
+        return token_hash;
+    }
+
+    public byte[] getFamily() {
+        return family;
+    }
+
+    public Long getId_user() {
+        return id_user;
+    }
+
+    public LocalDateTime getExpires_at() {
+        return expires_at;
+    }
+
+    public boolean isUsed() {
+        return used;
+    }
+
+    public LocalDateTime getUsed_at() {
+        return used_at;
+    }
+}
@@ -0,0 +1,61 @@
+package springboot.belzedev.it.models;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Revoca di un token JWT, mappata alla tabella {@code token_revocations}.
+ * Se {@code jti} è valorizzato la revoca riguarda un solo token, memorizzato come UUID in 16 byte;
+ * altrimenti riguarda tutti i token dell'utente {@code id_user} emessi fino a {@code revoked_at} compreso.
+ * La riga serve solo finché i token interessati non scadono ({@code expires_at}).
+ */
+@Entity
+@Table(name = "token_revocations", indexes = {
+        @Index(name = "idx_token_revocations_expiry", columnList = "expires_at"),
+        @Index(name = "idx_token_revocations_revoked", columnList = "revoked_at")
+})
+public class TokenRevocation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(columnDefinition = "binary(16)")
+    private byte[] jti;
+
+    private Long id_user;
+
+    private LocalDateTime revoked_at;
+
+    private LocalDateTime expires_at;
+
+    public TokenRevocation(){}
+
+    public TokenRevocation(byte[] jti, Long id_user, LocalDateTime revoked_at, LocalDateTime expires_at) {
+        this.jti = jti;
+        this.id_user = id_user;
+        this.revoked_at = revoked_at;
+        this.expires_at = expires_at;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public byte[] getJti() {
+        return jti;
+    }
+
+    public Long getId_user() {
+        return id_user;
+    }
+
+    public LocalDateTime getRevoked_at() {
+        return revoked_at;
+    }
+
+    public LocalDateTime getExpires_at() {
+        return expires_at;
+    }
+}
@@ -1,17 +1,53 @@
 package springboot.belzedev.it.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 /**
  * Questa classe rappresenta l'entità {@code User} che viene mappata alla tabella {@code users} nel database.
  * La classe contiene i campi che rappresentano le informazioni di un utente, come l'email, username, password, tema e lingua.
  * I campi sono associati alla tabella tramite le annotazioni JPA.
+ * L'entità è nella cache di secondo livello, sia per ID che per username (natural id),
+ * così le letture ripetute dal filtro JWT e da {@code GET /api/users/{id}} non raggiungono il database.
+ * La cache è locale al nodo, con una scadenza breve: il login legge le credenziali scavalcandola.
+ * La colonna {@code version} viene incrementata a ogni modifica e da essa derivano gli ETag delle risposte.
  */
 @Entity
-@Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.NATURAL_ID_CACHE_REGION)
+@Table(name = "users", uniqueConstraints = {
+        @UniqueConstraint(name = User.EMAIL_CONSTRAINT, columnNames = "email"),
+        @UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "username")
+})
 public class User {
 
+    /**
+     * Nome del vincolo univoco sulla colonna {@code email}.
+     */
+    public static final String EMAIL_CONSTRAINT = "uk_users_email";
+
+    /**
+     * Nome del vincolo univoco sulla colonna {@code username}.
+     */
+    public static final String USERNAME_CONSTRAINT = "uk_users_username";
+
+    /**
+     * Regione della cache di secondo livello con le entità per ID.
+     */
+    public static final String CACHE_REGION = "users";
+
+    /**
+     * Regione della cache di secondo livello che associa lo username all'ID.
+     */
+    public static final String NATURAL_ID_CACHE_REGION = "users-by-username";
+
     /**
      * Identificativo univoco dell'utente, mappato alla colonna {@code id_user} nella tabella {@code users}.
      * Viene generato automaticamente con la strategia {@code GenerationType.IDENTITY}.
@@ -28,7 +64,9 @@ public class User {
 
     /**
      * Username dell'utente, mappato alla colonna {@code username}.
+     * È il natural id dell'entità; resta modificabile tramite l'aggiornamento dell'utente.
      */
+    @NaturalId(mutable = true)
     private  String username;
 
     /**
@@ -52,6 +90,16 @@ public class User {
      */
     private String lang;
 
+    /**
+     * Versione dell'utente, mappata alla colonna {@code version}: incrementata da Hibernate a ogni aggiornamento
+     * (e dagli update in blocco del repository), usata per gli ETag e per il controllo di concorrenza ottimistico.
+     * Non fa parte del JSON: il client la riceve tramite l'header {@code ETag}.
+     */
+    @Version
+    @JsonIgnore
+    @ColumnDefault("0")
+    private long version;
+
     /**
      * Costruttore di default senza parametri.
      * Necessario per il corretto funzionamento di JPA.
@@ -151,4 +199,12 @@ public class User {
     public void setLang(String lang) {
         this.lang = lang;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
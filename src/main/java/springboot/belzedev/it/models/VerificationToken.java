@@ -5,7 +5,10 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "verification_tokens")
+@Table(name = "verification_tokens", indexes = {
+        @Index(name = "idx_verification_tokens_token", columnList = "token"),
+        @Index(name = "idx_verification_tokens_expiry", columnList = "expiry_date")
+})
 public class VerificationToken {
 
     @Id
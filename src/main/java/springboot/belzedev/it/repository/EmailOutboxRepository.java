@@ -0,0 +1,37 @@
+package springboot.belzedev.it.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import springboot.belzedev.it.models.EmailOutbox;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository per la outbox delle email in attesa di invio.
+ */
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    /**
+     * Recupera e blocca un lotto di messaggi pronti per l'invio.
+     * Le righe già bloccate da un'altra istanza vengono saltate ({@code SKIP LOCKED}),
+     * così più nodi possono svuotare la outbox senza inviare due volte lo stesso messaggio.
+     *
+     * @param now l'istante corrente
+     * @param pageable la dimensione del lotto
+     * @return i messaggi da inviare, in ordine di inserimento
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select m from EmailOutbox m where m.status = springboot.belzedev.it.enums.OutboxStatus.PENDING " +
+            "and m.next_attempt_at <= :now order by m.id")
+    List<EmailOutbox> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+}
@@ -0,0 +1,83 @@
+package springboot.belzedev.it.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import springboot.belzedev.it.models.RefreshToken;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    /**
+     * Cerca il refresh token tramite l'indice univoco sull'hash.
+     *
+     * @param hash l'hash SHA-256 del token
+     * @return il token, se esiste
+     */
+    @Query("select t from RefreshToken t where t.token_hash = :hash")
+    Optional<RefreshToken> findByHash(@Param("hash") byte[] hash);
+
+    /**
+     * Segna il token come usato con un solo update condizionale: delle richieste concorrenti con lo stesso token
+     * ne vince una sola, le altre vengono trattate come riuso.
+     *
+     * @param id l'ID del token
+     * @param now l'istante della rotazione
+     * @return 1 se il token è stato segnato adesso, 0 se era già stato usato
+     */
+    @Modifying
+    @Transactional
+    @Query("update RefreshToken t set t.used = true, t.used_at = :now where t.id = :id and t.used = false")
+    int markUsed(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    /**
+     * Indica se nella famiglia è già stato ruotato un token successivo a quello indicato,
+     * cioè se il token non è più l'immediato predecessore di quello valido.
+     *
+     * @param family l'identificativo della famiglia
+     * @param id l'ID del token
+     * @return {@code true} se esiste un token usato della famiglia emesso dopo quello indicato
+     */
+    @Query("select count(t) > 0 from RefreshToken t where t.family = :family and t.used = true and t.id > :id")
+    boolean existsUsedAfter(@Param("family") byte[] family, @Param("id") Long id);
+
+    /**
+     * Cancella tutti i token della famiglia indicata.
+     *
+     * @param family l'identificativo della famiglia
+     * @return il numero di token cancellati
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from RefreshToken t where t.family = :family")
+    int deleteFamily(@Param("family") byte[] family);
+
+    /**
+     * Cancella tutti i refresh token dell'utente.
+     *
+     * @param idUser l'ID dell'utente
+     * @return il numero di token cancellati
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from RefreshToken t where t.id_user = :idUser")
+    int deleteByUser(@Param("idUser") Long idUser);
+
+    /**
+     * Cancella un lotto di token scaduti, partendo dai più vecchi, usando l'indice su {@code expires_at}.
+     *
+     * @param now l'istante corrente
+     * @param limit il numero massimo di token da cancellare
+     * @return il numero di token cancellati
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from refresh_tokens where expires_at <= :now order by expires_at limit :limit", nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now, @Param("limit") int limit);
+}
@@ -0,0 +1,40 @@
+package springboot.belzedev.it.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import springboot.belzedev.it.models.TokenRevocation;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TokenRevocationRepository extends JpaRepository<TokenRevocation, Long> {
+
+    /**
+     * Restituisce le revoche registrate a partire dall'istante indicato e non ancora scadute.
+     * Usata all'avvio e poi periodicamente, con una finestra che si sovrappone alla lettura precedente,
+     * per ricevere le revoche delle altre istanze.
+     *
+     * @param since l'istante da cui leggere le revoche (su {@code revoked_at})
+     * @param now l'istante corrente
+     * @return le revoche della finestra
+     */
+    @Query("select r from TokenRevocation r where r.revoked_at >= :since and r.expires_at > :now")
+    List<TokenRevocation> findActiveRevokedSince(@Param("since") LocalDateTime since, @Param("now") LocalDateTime now);
+
+    /**
+     * Cancella un lotto di revoche scadute, partendo dalle più vecchie, usando l'indice su {@code expires_at}.
+     *
+     * @param now l'istante corrente
+     * @param limit il numero massimo di righe da cancellare
+     * @return il numero di righe cancellate
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from token_revocations where expires_at <= :now order by expires_at limit :limit", nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now, @Param("limit") int limit);
+}
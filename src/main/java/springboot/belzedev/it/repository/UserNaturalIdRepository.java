@@ -0,0 +1,32 @@
+package springboot.belzedev.it.repository;
+
+import springboot.belzedev.it.models.User;
+
+import java.util.Optional;
+
+/**
+ * Frammento di {@link UserRepository} per la ricerca degli utenti tramite il natural id ({@code username}),
+ * risolta dalla cache di secondo livello di Hibernate invece che con una query.
+ */
+public interface UserNaturalIdRepository {
+
+    /**
+     * Trova un utente in base allo username.
+     * Dopo il primo accesso sia l'associazione username → ID che l'entità vengono servite dalla cache.
+     * In caso di miss la lettura può andare a una replica, con il ritardo tollerato di default.
+     *
+     * @param username Lo username dell'utente da trovare
+     * @return Un {@link Optional} contenente l'utente, se trovato, o vuoto se l'utente non esiste
+     */
+    Optional<User> findByUsername(String username);
+
+    /**
+     * Trova un utente in base allo username leggendo sempre dal database, senza la cache di secondo livello,
+     * che è locale al nodo: dopo un cambio password su un altro nodo la cache potrebbe contenere ancora il vecchio hash.
+     * Va usato per il controllo delle credenziali; la riga letta aggiorna anche la cache del nodo.
+     *
+     * @param username Lo username dell'utente da trovare
+     * @return Un {@link Optional} contenente l'utente, se trovato, o vuoto se l'utente non esiste
+     */
+    Optional<User> findByUsernameBypassingCache(String username);
+}
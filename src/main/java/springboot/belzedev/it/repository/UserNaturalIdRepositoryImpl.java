@@ -0,0 +1,47 @@
+package springboot.belzedev.it.repository;
+
+import jakarta.persistence.CacheRetrieveMode;
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+import springboot.belzedev.it.models.User;
+
+import java.util.Optional;
+
+/**
+ * Implementazione di {@link UserNaturalIdRepository} tramite le API natural id della sessione Hibernate
+ * e, per le letture che devono evitare la cache, con una query che la scavalca.
+ */
+class UserNaturalIdRepositoryImpl implements UserNaturalIdRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // La transazione garantisce una sessione aperta anche quando il chiamante non ne ha una
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<User> findByUsername(String username) {
+        if(username == null){
+            return Optional.empty();
+        }
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .loadOptional(username);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<User> findByUsernameBypassingCache(String username) {
+        if(username == null){
+            return Optional.empty();
+        }
+        return entityManager.createQuery("select u from User u where u.username = :username", User.class)
+                .setParameter("username", username)
+                .setHint("jakarta.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS)
+                .setHint("jakarta.persistence.cache.storeMode", CacheStoreMode.REFRESH)
+                .getResultStream()
+                .findFirst();
+    }
+}
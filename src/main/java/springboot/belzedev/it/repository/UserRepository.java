@@ -1,22 +1,27 @@
 package springboot.belzedev.it.repository;
 
-import jakarta.transaction.Transactional;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import springboot.belzedev.it.dto.UserSummary;
 import springboot.belzedev.it.models.User;
 
-import java.util.Optional;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Questa interfaccia estende {@link JpaRepository} per gestire le operazioni CRUD e query personalizzate
  * per l'entità {@link User}. Il framework Spring Data JPA fornisce l'implementazione automatica delle
- * operazioni di base sui dati.
+ * operazioni di base sui dati. La ricerca per username è fornita da {@link UserNaturalIdRepository},
+ * gli aggiornamenti mirati (preferenze, verifica, password) da {@link UserUpdateRepository}.
  */
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserNaturalIdRepository, UserUpdateRepository {
 
     /**
      * Verifica se esiste un utente con l'email specificata.
@@ -24,6 +29,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @param email L'email dell'utente da verificare
      * @return {@code true} se esiste un utente con l'email specificata, {@code false} altrimenti
      */
+    @Transactional(readOnly = true, label = "replica.max-lag=1s")
     boolean existsByEmail(String email);
 
     /**
@@ -32,27 +38,34 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @param username Lo username dell'utente da verificare
      * @return {@code true} se esiste un utente con lo username specificato, {@code false} altrimenti
      */
+    @Transactional(readOnly = true, label = "replica.max-lag=1s")
     boolean existsByUsername(String username);
 
     /**
-     * Trova un utente in base allo username.
+     * Restituisce una pagina di utenti con ID maggiore del cursore indicato (paginazione keyset su {@code id_user}).
+     * I risultati sono proiezioni senza password, non entità gestite; la lettura tollera un ritardo di replica più ampio.
      *
-     * @param username Lo username dell'utente da trovare
-     * @return Un {@link Optional} contenente l'utente, se trovato, o vuoto se l'utente non esiste
+     * @param after L'ID dell'ultimo utente della pagina precedente (0 per la prima pagina)
+     * @param pageable La dimensione della pagina
+     * @return Gli utenti della pagina, ordinati per ID crescente
      */
-    Optional<User> findByUsername(String username);
+    @Transactional(readOnly = true, label = "replica.max-lag=30s")
+    @Query("select new springboot.belzedev.it.dto.UserSummary(u.id_user, u.email, u.username, u.verified, u.theme, u.lang, u.version) " +
+            "from User u where u.id_user > :after order by u.id_user")
+    List<UserSummary> findPageAfter(@Param("after") Long after, Pageable pageable);
 
     /**
-     * Esegue una query SQL nativa per registrare un nuovo utente inserendo email, username e password nella tabella.
-     * La query è annotata con {@link Modifying} per indicare che si tratta di una modifica ai dati.
-     * La transazione è gestita con {@link Transactional} per garantire l'integrità dei dati.
+     * Restituisce tutti gli utenti come stream letto da un cursore JDBC.
+     * La fetch size {@code Integer.MIN_VALUE} fa sì che il driver MySQL legga le righe una alla volta
+     * invece di caricare l'intero result set in memoria. Lo stream va consumato e chiuso all'interno di una transazione.
      *
-     * @param email L'email del nuovo utente
-     * @param username Lo username del nuovo utente
-     * @param psw La password del nuovo utente
+     * @return Lo stream degli utenti, ordinati per ID crescente
      */
-    @Modifying
-    @Transactional
-    @Query(value = "insert into users(email, username, psw)values(:email, :username, :psw)", nativeQuery = true)
-    void register(@Param("email") String email, @Param("username") String username, @Param("psw") String psw);
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "-2147483648"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("select new springboot.belzedev.it.dto.UserSummary(u.id_user, u.email, u.username, u.verified, u.theme, u.lang, u.version) " +
+            "from User u order by u.id_user")
+    Stream<UserSummary> streamAll();
 }
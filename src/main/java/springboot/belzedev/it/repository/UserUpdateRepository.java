@@ -0,0 +1,39 @@
+package springboot.belzedev.it.repository;
+
+import springboot.belzedev.it.dto.UserPreferences;
+
+/**
+ * Frammento di {@link UserRepository} per gli aggiornamenti mirati dell'utente (preferenze, verifica, password).
+ * Ogni aggiornamento è un'unica update sulle sole colonne interessate, senza caricare l'entità, e scarta dalla cache
+ * di secondo livello soltanto la voce dell'utente, invece di svuotare l'intera regione {@code users}.
+ * Ognuno incrementa la versione dell'utente, così il suo ETag cambia.
+ */
+public interface UserUpdateRepository {
+
+    /**
+     * Aggiorna soltanto le preferenze valorizzate e incrementa la versione dell'utente.
+     *
+     * @param idUser L'ID dell'utente
+     * @param preferences Le preferenze da modificare; i campi {@code null} restano invariati
+     * @param expectedVersion La versione attesa dell'utente, oppure {@code null} per aggiornare senza controllo
+     * @return 1 se l'utente è stato aggiornato, 0 se non esiste o la sua versione è diversa da quella attesa
+     */
+    int updatePreferences(Long idUser, UserPreferences preferences, Long expectedVersion);
+
+    /**
+     * Segna l'utente come verificato.
+     *
+     * @param idUser L'ID dell'utente
+     * @return 1 se l'utente è stato verificato, 0 se non esiste o era già verificato
+     */
+    int markVerified(Long idUser);
+
+    /**
+     * Aggiorna soltanto l'hash della password dell'utente indicato.
+     *
+     * @param idUser L'ID dell'utente
+     * @param psw Il nuovo hash della password
+     * @return Il numero di righe aggiornate
+     */
+    int updatePassword(Long idUser, String psw);
+}
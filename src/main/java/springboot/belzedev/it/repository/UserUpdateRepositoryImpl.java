@@ -0,0 +1,85 @@
+package springboot.belzedev.it.repository;
+
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import springboot.belzedev.it.dto.UserPreferences;
+import springboot.belzedev.it.models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementazione di {@link UserUpdateRepository}: ogni aggiornamento è un'unica update JDBC sulle sole colonne
+ * da modificare, senza leggere l'utente. Passando da JDBC, Hibernate non svuota la regione {@code users}
+ * della cache di secondo livello: viene scartata soltanto la voce dell'utente aggiornato.
+ */
+class UserUpdateRepositoryImpl implements UserUpdateRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    UserUpdateRepositoryImpl(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    @Transactional
+    public int updatePreferences(Long idUser, UserPreferences preferences, Long expectedVersion) {
+        StringBuilder sql = new StringBuilder("update users set ");
+        List<Object> args = new ArrayList<>();
+        if(preferences.getTheme() != null){
+            sql.append("theme = ?, ");
+            args.add(preferences.getTheme());
+        }
+        if(preferences.getLang() != null){
+            sql.append("lang = ?, ");
+            args.add(preferences.getLang());
+        }
+        // Incrementa la versione, così l'ETag dell'utente cambia
+        sql.append("version = version + 1 where id_user = ?");
+        args.add(idUser);
+        if(expectedVersion != null){
+            sql.append(" and version = ?");
+            args.add(expectedVersion);
+        }
+        return evictIfUpdated(idUser, jdbcTemplate.update(sql.toString(), args.toArray()));
+    }
+
+    @Override
+    @Transactional
+    public int markVerified(Long idUser) {
+        // Update condizionale: delle conferme concorrenti dello stesso link ne conta una sola
+        return evictIfUpdated(idUser, jdbcTemplate.update(
+                "update users set verified = true, version = version + 1 where id_user = ? and verified = false", idUser));
+    }
+
+    @Override
+    @Transactional
+    public int updatePassword(Long idUser, String psw) {
+        return evictIfUpdated(idUser, jdbcTemplate.update(
+                "update users set psw = ?, version = version + 1 where id_user = ?", psw, idUser));
+    }
+
+    // Scarta dalla cache di secondo livello la sola voce dell'utente, subito e di nuovo al termine della transazione:
+    // una lettura concorrente potrebbe rimetterci la riga precedente prima del commit
+    private int evictIfUpdated(Long idUser, int updated) {
+        if(updated > 0){
+            Cache cache = entityManagerFactory.getCache();
+            cache.evict(User.class, idUser);
+            if(TransactionSynchronizationManager.isSynchronizationActive()){
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        cache.evict(User.class, idUser);
+                    }
+                });
+            }
+        }
+        return updated;
+    }
+}
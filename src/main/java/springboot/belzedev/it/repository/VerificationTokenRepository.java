@@ -1,10 +1,16 @@
 package springboot.belzedev.it.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import springboot.belzedev.it.models.User;
 import springboot.belzedev.it.models.VerificationToken;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +18,34 @@ public interface VerificationTokenRepository extends JpaRepository<VerificationT
 
     Optional<VerificationToken> findByToken(String token);
     Optional<VerificationToken> findByUser(User user);
+
+    /**
+     * Cancella un lotto di token scaduti, partendo dai più vecchi.
+     * La query usa l'indice sulla colonna {@code expiry_date} e non scorre l'intera tabella.
+     *
+     * @param now l'istante corrente
+     * @param limit il numero massimo di token da cancellare
+     * @return il numero di token cancellati
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "delete from verification_tokens where expiry_date <= :now order by expiry_date limit :limit", nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * Restituisce la scadenza del token scaduto più vecchio ancora presente, letta dall'indice su {@code expiry_date}.
+     *
+     * @return la scadenza più vecchia, oppure {@code null} se la tabella è vuota
+     */
+    @Query("select min(t.expiry_date) from VerificationToken t")
+    LocalDateTime findOldestExpiry();
+
+    /**
+     * Restituisce le scadenze dei token non ancora scaduti, per popolare la timing wheel all'avvio.
+     *
+     * @param now l'istante corrente
+     * @return le scadenze future
+     */
+    @Query("select t.expiry_date from VerificationToken t where t.expiry_date > :now")
+    List<LocalDateTime> findPendingExpiries(@Param("now") LocalDateTime now);
 }
@@ -0,0 +1,68 @@
+package springboot.belzedev.it.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import springboot.belzedev.it.dto.ApiResponse;
+import springboot.belzedev.it.enums.ErrorsResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Misura la durata end-to-end di login e registrazione, con l'esito come tag:
+ * {@code SUCCESS} oppure il codice {@link ErrorsResponse} restituito al client.
+ * Il timer pubblica l'istogramma dei percentili, per poter allertare sul p99 lato Prometheus.
+ */
+@Component
+public class AuthMetrics {
+
+    private static final String SUCCESS = "SUCCESS";
+
+    private final MeterRegistry registry;
+
+    public AuthMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registra la durata della risposta asincrona, dall'avvio dell'operazione fino al suo completamento.
+     * L'operazione viene avviata qui, dopo l'inizio della misura: il lavoro svolto in modo sincrono
+     * dal chiamante prima di restituire il future (es. la lettura dell'utente) rientra nella durata.
+     *
+     * @param operation l'operazione misurata (es. {@code login}, {@code register})
+     * @param response avvia l'operazione e restituisce il future con la risposta HTTP
+     * @return il future con la risposta, per concatenare la chiamata
+     */
+    public CompletableFuture<ResponseEntity<ApiResponse>> record(String operation,
+                                                                 Supplier<CompletableFuture<ResponseEntity<ApiResponse>>> response) {
+        Timer.Sample sample = Timer.start(registry);
+        CompletableFuture<ResponseEntity<ApiResponse>> future;
+        try{
+            future = response.get();
+        }
+        catch (RuntimeException e){
+            sample.stop(timer(operation, outcome(null, e)));
+            throw e;
+        }
+        return future.whenComplete((entity, error) -> sample.stop(timer(operation, outcome(entity, error))));
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return Timer.builder("auth.requests")
+                .description("Durata di login e registrazione per esito")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static String outcome(ResponseEntity<ApiResponse> entity, Throwable error) {
+        if(error != null || entity == null || entity.getBody() == null){
+            return ErrorsResponse.SERVER_ERROR.name();
+        }
+        ApiResponse body = entity.getBody();
+        return body.isSuccess() ? SUCCESS : ErrorsResponse.fromMessage(body.getMessage()).name();
+    }
+}
@@ -0,0 +1,140 @@
+package springboot.belzedev.it.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Risultato della calibrazione del costo BCrypt eseguita all'avvio.
+ * La calibrazione misura il tempo di un hash sulla macchina corrente e sceglie la strength più alta
+ * il cui tempo stimato rientra nel budget di latenza configurato.
+ */
+public class BCryptCalibration {
+
+    private static final Logger log = LoggerFactory.getLogger(BCryptCalibration.class);
+
+    // Password fittizia usata solo per le misurazioni
+    private static final String SAMPLE_PASSWORD = "calibration-sample-password";
+
+    // Strength scelta per i nuovi hash
+    private final int strength;
+
+    // Tempo misurato (in millisecondi) di un hash con la strength scelta
+    private final double hashMillis;
+
+    // Budget di latenza per hash configurato (in millisecondi)
+    private final long budgetMillis;
+
+    // true se la strength è stata calcolata, false se è stata imposta da configurazione
+    private final boolean calibrated;
+
+    private BCryptCalibration(int strength, double hashMillis, long budgetMillis, boolean calibrated) {
+        this.strength = strength;
+        this.hashMillis = hashMillis;
+        this.budgetMillis = budgetMillis;
+        this.calibrated = calibrated;
+    }
+
+    /**
+     * Usa una strength fissa, misurandone comunque il tempo per poterlo esporre.
+     *
+     * @param strength la strength imposta da configurazione
+     * @return il risultato della calibrazione
+     */
+    public static BCryptCalibration fixed(int strength) {
+        double millis = measure(strength);
+        log.info("BCrypt strength fissata a {} da configurazione ({} ms per hash)", strength, String.format("%.1f", millis));
+        return new BCryptCalibration(strength, millis, 0, false);
+    }
+
+    /**
+     * Sceglie la strength più alta, compresa tra {@code minStrength} e {@code maxStrength},
+     * il cui tempo per hash rientra nel budget indicato sulla macchina corrente.
+     *
+     * @param budgetMillis budget di latenza per singolo hash, in millisecondi
+     * @param minStrength strength minima ammessa (non si scende mai sotto questo valore)
+     * @param maxStrength strength massima ammessa
+     * @return il risultato della calibrazione
+     */
+    public static BCryptCalibration calibrate(long budgetMillis, int minStrength, int maxStrength) {
+        // Misura la strength minima e stima le successive: ogni incremento raddoppia il costo
+        double baseMillis = measure(minStrength);
+        int strength = minStrength;
+        while(strength < maxStrength && baseMillis * (1L << (strength + 1 - minStrength)) <= budgetMillis){
+            strength++;
+        }
+        // Verifica la stima misurando direttamente la strength scelta
+        double millis = strength == minStrength ? baseMillis : measure(strength);
+        while(strength > minStrength && millis > budgetMillis){
+            strength--;
+            millis = measure(strength);
+        }
+        log.info("BCrypt calibrato: strength {} ({} ms per hash, budget {} ms, strength {} = {} ms)",
+                strength, String.format("%.1f", millis), budgetMillis, minStrength, String.format("%.1f", baseMillis));
+        if(millis > budgetMillis){
+            log.warn("Anche la strength minima {} supera il budget di {} ms su questa macchina", minStrength, budgetMillis);
+        }
+        return new BCryptCalibration(strength, millis, budgetMillis, true);
+    }
+
+    // Misura il tempo migliore su alcune esecuzioni, dopo un riscaldamento
+    private static double measure(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        encoder.encode(SAMPLE_PASSWORD);
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < 3; i++){
+            long start = System.nanoTime();
+            encoder.encode(SAMPLE_PASSWORD);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1_000_000.0;
+    }
+
+    /**
+     * Estrae il costo (strength) da un hash BCrypt nel formato {@code $2a$10$...}.
+     *
+     * @param encodedPassword l'hash BCrypt
+     * @return il costo dell'hash, oppure -1 se il formato non è riconosciuto
+     */
+    public static int costOf(String encodedPassword) {
+        if(encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$'
+                || encodedPassword.charAt(3) != '$' || encodedPassword.charAt(6) != '$'){
+            return -1;
+        }
+        char tens = encodedPassword.charAt(4);
+        char units = encodedPassword.charAt(5);
+        if(!Character.isDigit(tens) || !Character.isDigit(units)){
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    /**
+     * Indica se l'hash memorizzato ha un costo inferiore a quello attuale e va quindi ricalcolato.
+     * Un hash più costoso viene mantenuto: la calibrazione varia da un nodo all'altro e da un avvio all'altro,
+     * e abbassarne il costo indebolirebbe la password (oltre a riscriverla a ogni login su nodi diversi).
+     *
+     * @param encodedPassword l'hash memorizzato
+     * @return {@code true} se l'hash va ricalcolato
+     */
+    public boolean needsRehash(String encodedPassword) {
+        int cost = costOf(encodedPassword);
+        return cost != -1 && cost < strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    public double getHashMillis() {
+        return hashMillis;
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    public boolean isCalibrated() {
+        return calibrated;
+    }
+}
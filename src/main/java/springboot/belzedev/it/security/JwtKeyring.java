@@ -0,0 +1,291 @@
+package springboot.belzedev.it.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Portachiavi delle chiavi HMAC usate per firmare i token JWT, salvato su file e condiviso dalle istanze sullo stesso host.
+ * Ogni chiave ha un identificativo ({@code kid}) scritto nell'header del token: la verifica sceglie la chiave
+ * con una lookup su mappa, senza provarle tutte. La chiave più recente firma i nuovi token; ogni intervallo di rotazione
+ * ne viene generata una nuova, e le precedenti restano valide per la verifica finché non sono scaduti
+ * tutti i token che possono aver firmato (finestra di sovrapposizione).
+ * Formato del file, una chiave per riga: {@code kid creazioneEpochSecondi chiaveBase64}.
+ */
+@Component
+public class JwtKeyring {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyring.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int KEY_BYTES = 32;
+
+    // Intervallo minimo tra due ricariche forzate da un kid sconosciuto
+    private static final long RELOAD_THROTTLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Chiave di firma con il suo identificativo e l'istante di creazione.
+     */
+    public record SigningKey(String kid, long createdAtSeconds, SecretKey key) {}
+
+    private final Path path;
+    private final Path lockPath;
+    private final long rotationSeconds;
+    private final long overlapSeconds;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+
+    // Snapshot immutabile delle chiavi valide, sostituito per intero a ogni ricarica
+    private volatile Map<String, SigningKey> keys = Map.of();
+    private volatile SigningKey current;
+
+    // Data di modifica del file all'ultima lettura, per ricaricarlo solo se un'altra istanza l'ha cambiato
+    private volatile FileTime loadedModified;
+    private volatile long lastForcedReloadNanos = System.nanoTime() - RELOAD_THROTTLE_NANOS;
+
+    /**
+     * @param path il file del portachiavi, creato se non esiste
+     * @param rotation l'intervallo dopo il quale viene generata una nuova chiave di firma
+     * @param overlap per quanto tempo una chiave sostituita resta valida per la verifica (0 = il minimo ammesso)
+     * @param tokenTtl la durata di validità dei token firmati
+     * @param checkIntervalMillis l'intervallo con cui ogni istanza rilegge il file e ne adotta la chiave più recente
+     * @throws IllegalArgumentException se la sovrapposizione è inferiore alla durata dei token più l'intervallo di controllo
+     */
+    public JwtKeyring(@Value("${jwt.keyring.path:jwt-keyring.txt}") String path,
+                      @Value("${jwt.keyring.rotation:24h}") Duration rotation,
+                      @Value("${jwt.keyring.overlap:0s}") Duration overlap,
+                      @Value("${jwt.ttl:15m}") Duration tokenTtl,
+                      @Value("${jwt.keyring.check-interval-ms:60000}") long checkIntervalMillis) {
+        this(Path.of(path), rotation, effectiveOverlap(overlap, tokenTtl, checkIntervalMillis), System::currentTimeMillis);
+    }
+
+    JwtKeyring(Path path, Duration rotation, Duration overlap, LongSupplier clock) {
+        this.path = path.toAbsolutePath();
+        this.lockPath = this.path.resolveSibling(this.path.getFileName() + ".lock");
+        this.rotationSeconds = rotation.toSeconds();
+        this.overlapSeconds = overlap.toSeconds();
+        this.clock = clock;
+        try{
+            rotateIfDue();
+        }
+        catch (IOException e){
+            throw new UncheckedIOException("Impossibile inizializzare il portachiavi JWT " + this.path, e);
+        }
+    }
+
+    /**
+     * Calcola la finestra di sovrapposizione. Dopo una rotazione, un'istanza che non ha ancora riletto il file
+     * continua a firmare con la chiave precedente fino al controllo successivo, e quei token restano validi
+     * per tutta la loro durata: la chiave sostituita deve quindi verificare almeno per {@code tokenTtl + checkInterval}.
+     *
+     * @param overlap la sovrapposizione configurata (0 = il minimo ammesso)
+     * @param tokenTtl la durata di validità dei token firmati
+     * @param checkIntervalMillis l'intervallo di controllo del file
+     * @return la sovrapposizione da applicare
+     * @throws IllegalArgumentException se la sovrapposizione configurata è inferiore al minimo
+     */
+    static Duration effectiveOverlap(Duration overlap, Duration tokenTtl, long checkIntervalMillis) {
+        Duration minimum = tokenTtl.plusMillis(checkIntervalMillis);
+        if(overlap.isZero()){
+            return minimum;
+        }
+        if(overlap.compareTo(minimum) < 0){
+            throw new IllegalArgumentException("jwt.keyring.overlap (" + overlap + ") deve essere almeno jwt.ttl"
+                    + " più jwt.keyring.check-interval-ms (" + minimum + ")");
+        }
+        return overlap;
+    }
+
+    /**
+     * Restituisce la chiave con cui firmare i nuovi token.
+     *
+     * @return la chiave di firma corrente
+     */
+    public SigningKey current() {
+        return current;
+    }
+
+    /**
+     * Restituisce la chiave con l'identificativo indicato. Se non è nota, il file viene riletto
+     * (al massimo una volta al secondo), perché un'altra istanza potrebbe averla appena generata.
+     *
+     * @param kid l'identificativo della chiave
+     * @return la chiave, oppure {@code null} se non esiste o non è più valida
+     */
+    public SecretKey find(String kid) {
+        if(kid == null){
+            return null;
+        }
+        SigningKey key = keys.get(kid);
+        if(key == null && reloadAllowed()){
+            try{
+                reloadIfModified();
+            }
+            catch (IOException e){
+                log.warn("Lettura del portachiavi JWT fallita: {}", e.getMessage());
+            }
+            key = keys.get(kid);
+        }
+        return key != null ? key.key() : null;
+    }
+
+    /**
+     * Rilegge il file se è stato modificato e genera una nuova chiave se quella corrente ha superato l'intervallo di rotazione.
+     */
+    @Scheduled(fixedDelayString = "${jwt.keyring.check-interval-ms:60000}")
+    public void refresh() {
+        try{
+            reloadIfModified();
+            if(isDue(current)){
+                rotateIfDue();
+            }
+        }
+        catch (IOException e){
+            log.warn("Aggiornamento del portachiavi JWT fallito, nuovo tentativo al prossimo ciclo: {}", e.getMessage());
+        }
+    }
+
+    // Sotto lock sul file: rilegge le chiavi, ne aggiunge una se nessuna istanza l'ha già fatto, scarta quelle ritirate
+    private synchronized void rotateIfDue() throws IOException {
+        Files.createDirectories(path.getParent());
+        try(FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock ignored = channel.lock()){
+            List<SigningKey> stored = Files.exists(path) ? read() : new ArrayList<>();
+            SigningKey newest = stored.stream().max(Comparator.comparingLong(SigningKey::createdAtSeconds)).orElse(null);
+            long now = nowSeconds();
+            if(isDue(newest)){
+                stored.add(generate(now));
+                List<SigningKey> retained = retain(stored, now);
+                write(retained);
+                log.info("Generata una nuova chiave di firma JWT ({} chiavi valide)", retained.size());
+            }
+            install(retain(stored, now));
+            loadedModified = Files.getLastModifiedTime(path);
+        }
+    }
+
+    private void reloadIfModified() throws IOException {
+        FileTime modified = Files.getLastModifiedTime(path);
+        if(!modified.equals(loadedModified)){
+            install(retain(read(), nowSeconds()));
+            loadedModified = modified;
+        }
+    }
+
+    private boolean isDue(SigningKey key) {
+        return key == null || nowSeconds() - key.createdAtSeconds() >= rotationSeconds;
+    }
+
+    // Una chiave resta valida fino alla creazione della successiva più la finestra di sovrapposizione; la più recente sempre
+    private List<SigningKey> retain(List<SigningKey> stored, long now) {
+        List<SigningKey> sorted = new ArrayList<>(stored);
+        sorted.sort(Comparator.comparingLong(SigningKey::createdAtSeconds));
+        List<SigningKey> retained = new ArrayList<>();
+        for(int i = 0; i < sorted.size(); i++){
+            boolean newest = i == sorted.size() - 1;
+            if(newest || sorted.get(i + 1).createdAtSeconds() + overlapSeconds > now){
+                retained.add(sorted.get(i));
+            }
+        }
+        return retained;
+    }
+
+    private void install(List<SigningKey> retained) {
+        Map<String, SigningKey> byKid = new HashMap<>();
+        SigningKey newest = null;
+        for(SigningKey key : retained){
+            byKid.put(key.kid(), key);
+            if(newest == null || key.createdAtSeconds() >= newest.createdAtSeconds()){
+                newest = key;
+            }
+        }
+        keys = Map.copyOf(byKid);
+        if(newest != null){
+            current = newest;
+        }
+    }
+
+    private SigningKey generate(long now) {
+        byte[] bytes = new byte[KEY_BYTES];
+        random.nextBytes(bytes);
+        String kid = UUID.randomUUID().toString().substring(0, 8);
+        return new SigningKey(kid, now, new SecretKeySpec(bytes, ALGORITHM));
+    }
+
+    private List<SigningKey> read() throws IOException {
+        List<SigningKey> stored = new ArrayList<>();
+        for(String line : Files.readAllLines(path, StandardCharsets.US_ASCII)){
+            String[] fields = line.trim().split("\\s+");
+            if(fields.length != 3 || fields[0].startsWith("#")){
+                continue;
+            }
+            stored.add(new SigningKey(fields[0], Long.parseLong(fields[1]),
+                    new SecretKeySpec(Base64.getDecoder().decode(fields[2]), ALGORITHM)));
+        }
+        return stored;
+    }
+
+    // Scrive su un file temporaneo e lo sostituisce in modo atomico: le altre istanze non leggono mai un file a metà
+    private void write(List<SigningKey> retained) throws IOException {
+        StringBuilder content = new StringBuilder("# kid creazione(epoch s) chiave(base64)\n");
+        for(SigningKey key : retained){
+            content.append(key.kid()).append(' ')
+                    .append(key.createdAtSeconds()).append(' ')
+                    .append(Base64.getEncoder().encodeToString(key.key().getEncoded())).append('\n');
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.US_ASCII);
+        restrictPermissions(temp);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void restrictPermissions(Path file) throws IOException {
+        try{
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        }
+        catch (UnsupportedOperationException e){
+            // File system non POSIX: restano i permessi di default
+        }
+    }
+
+    private boolean reloadAllowed() {
+        long now = System.nanoTime();
+        long last = lastForcedReloadNanos;
+        if(now - last < RELOAD_THROTTLE_NANOS){
+            return false;
+        }
+        lastForcedReloadNanos = now;
+        return true;
+    }
+
+    private long nowSeconds() {
+        return clock.getAsLong() / 1000;
+    }
+}
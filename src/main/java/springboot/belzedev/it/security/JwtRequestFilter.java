@@ -1,10 +1,16 @@
 package springboot.belzedev.it.security;
 
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,6 +18,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
+import springboot.belzedev.it.services.TokenRevocationService;
 import springboot.belzedev.it.utils.JwtUtil;
 
 import java.io.IOException;
@@ -19,6 +26,13 @@ import java.io.IOException;
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
 
+    private static final Logger log = LoggerFactory.getLogger(JwtRequestFilter.class);
+
+    /**
+     * Attributo della richiesta con i claims del token autenticato, letto ad esempio dal logout.
+     */
+    public static final String CLAIMS_ATTRIBUTE = JwtRequestFilter.class.getName() + ".claims";
+
     // Inietta il componente JwtUtil, utilizzato per gestire i token JWT
     @Autowired
     private JwtUtil jwtUtil;
@@ -27,6 +41,14 @@ public class JwtRequestFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsService userDetailsService;
 
+    // Inietta il servizio delle revoche, consultato in memoria a ogni richiesta
+    @Autowired
+    private TokenRevocationService revocationService;
+
+    // Inietta il registro delle metriche, per misurare la verifica del token per esito
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     /**
      * Filtro che intercetta ogni richiesta HTTP e verifica la presenza di un token JWT valido.
      * Se il token è valido, autentica l'utente e aggiorna il SecurityContext.
@@ -42,36 +64,59 @@ public class JwtRequestFilter extends OncePerRequestFilter {
             throws IOException, ServletException {
         // Estrae l'header "Authorization" dalla richiesta
         final String authorizationHeader = request.getHeader("Authorization");
-        String username = null;
-        String jwtToken = null;
+        Claims claims = null;
         // Verifica se l'header contiene un token JWT e se inizia con "Bearer"
         if(authorizationHeader != null && authorizationHeader.startsWith("Bearer")){
             // Rimuove il prefisso "Bearer " per ottenere il token
-            jwtToken = authorizationHeader.substring(7);
+            String jwtToken = authorizationHeader.substring(7);
+            Timer.Sample sample = Timer.start(meterRegistry);
+            String outcome = "valid";
             try{
-                // Estrae lo username dal token JWT
-                username = jwtUtil.extractUsername(jwtToken);
+                // Verifica il token una sola volta (firma e scadenza) e ne ottiene i claims
+                claims = jwtUtil.verifyToken(jwtToken);
+                // Token valido ma revocato (logout, cambio password, account cancellato)
+                if(revocationService.isRevoked(claims)){
+                    outcome = "revoked";
+                    claims = null;
+                }
             }
             catch(ExpiredJwtException e){
                 // Gestisce il caso in cui il token è scaduto
-                System.out.println("Token scaduto");
+                outcome = "expired";
+                log.debug("Token scaduto per {}", e.getClaims().getSubject());
+            }
+            catch(JwtException | IllegalArgumentException e){
+                // Firma non valida o token malformato: la richiesta prosegue non autenticata
+                outcome = "invalid";
+                log.debug("Token non valido: {}", e.getMessage());
             }
+            sample.stop(verifyTimer(outcome));
         }
-        // Se c'è un username estratto e l'utente non è già autenticato
-        if(username != null && SecurityContextHolder.getContext().getAuthentication() == null){
+        // Se il token è valido e l'utente non è già autenticato
+        if(claims != null && claims.getSubject() != null && SecurityContextHolder.getContext().getAuthentication() == null){
+            String username = claims.getSubject();
             // Carica i dettagli dell'utente dal servizio UserDetailsService
             UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            // Valida il token JWT confrontando lo username e verificando se è scaduto
-            if(jwtUtil.validateToken(jwtToken, username)){
+            // Firma e scadenza sono già state verificate: resta da controllare che lo username corrisponda
+            if(username.equals(userDetails.getUsername())){
                 // Crea un'istanza di UsernamePasswordAuthenticationToken basata sui dettagli dell'utente
                 UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities()
                 );
                 // Imposta l'oggetto Authentication nel SecurityContext
                 SecurityContextHolder.getContext().setAuthentication(authenticationToken);
+                request.setAttribute(CLAIMS_ATTRIBUTE, claims);
             }
         }
         // Prosegue con la catena di filtri
         filterChain.doFilter(request, response);
     }
+
+    private Timer verifyTimer(String outcome) {
+        return Timer.builder("security.jwt.verify")
+                .description("Durata del parsing e della verifica del token JWT")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 }
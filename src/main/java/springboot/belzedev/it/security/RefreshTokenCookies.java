@@ -0,0 +1,63 @@
+package springboot.belzedev.it.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Crea il cookie che trasporta il refresh token: HttpOnly, per non esporlo agli script della pagina,
+ * e limitato ai percorsi {@code /api}, dove si trovano refresh e logout.
+ * Il frontend è servito da un altro sito, quindi di default il cookie è {@code SameSite=None} (e {@code Secure}).
+ */
+@Component
+public class RefreshTokenCookies {
+
+    /**
+     * Nome del cookie con il refresh token.
+     */
+    public static final String NAME = "refresh_token";
+
+    private static final String PATH = "/api";
+
+    private final boolean secure;
+    private final String sameSite;
+    private final Duration ttl;
+
+    /**
+     * @param secure {@code true} per inviare il cookie solo su HTTPS
+     * @param sameSite il valore dell'attributo SameSite ({@code None}, {@code Lax} o {@code Strict})
+     * @param ttl la validità del refresh token
+     */
+    public RefreshTokenCookies(@Value("${security.refresh-token.cookie-secure:true}") boolean secure,
+                               @Value("${security.refresh-token.cookie-same-site:None}") String sameSite,
+                               @Value("${security.refresh-token.ttl:14d}") Duration ttl) {
+        this.secure = secure;
+        this.sameSite = sameSite;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param token il refresh token
+     * @return il cookie che lo contiene, valido quanto il token
+     */
+    public ResponseCookie create(String token) {
+        return builder(token).maxAge(ttl).build();
+    }
+
+    /**
+     * @return il cookie che cancella quello del refresh token
+     */
+    public ResponseCookie clear() {
+        return builder("").maxAge(Duration.ZERO).build();
+    }
+
+    private ResponseCookie.ResponseCookieBuilder builder(String value) {
+        return ResponseCookie.from(NAME, value)
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite(sameSite)
+                .path(PATH);
+    }
+}
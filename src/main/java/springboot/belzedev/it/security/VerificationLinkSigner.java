@@ -0,0 +1,128 @@
+package springboot.belzedev.it.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Firma e verifica i link di verifica email senza stato.
+ * Il token contiene l'ID utente e la scadenza, seguiti da un HMAC-SHA256 calcolato con una chiave segreta:
+ * la verifica non richiede alcun accesso al database.
+ * Formato: {@code base64url(idUser:scadenzaEpochSecondi).base64url(hmac)}.
+ */
+@Component
+public class VerificationLinkSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    // Mac già inizializzato con la chiave, clonato a ogni uso perché Mac non è thread-safe
+    private final Mac prototype;
+
+    // Validità del link
+    private final long ttlSeconds;
+
+    /**
+     * In modalità {@code stateless} la chiave è obbligatoria: una chiave casuale cambierebbe a ogni avvio e su ogni nodo,
+     * invalidando tutti i link già inviati (compresi quelli ancora in coda nella outbox).
+     *
+     * @param mode modalità dei nuovi link ({@code token} oppure {@code stateless})
+     * @param secret chiave segreta in base64, condivisa da tutte le istanze; in modalità {@code token}, se assente,
+     *               ne viene generata una casuale, dato che non viene usata per firmare nuovi link
+     * @param ttl validità del link
+     */
+    public VerificationLinkSigner(@Value("${verification.link.mode:token}") String mode,
+                                  @Value("${verification.link.secret:}") String secret,
+                                  @Value("${verification.link.ttl:1h}") Duration ttl) {
+        byte[] key;
+        if(secret.isBlank()){
+            if("stateless".equalsIgnoreCase(mode)){
+                throw new IllegalStateException("verification.link.mode=stateless richiede verification.link.secret");
+            }
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        }
+        else{
+            key = Base64.getDecoder().decode(secret);
+        }
+        try{
+            this.prototype = Mac.getInstance(ALGORITHM);
+            this.prototype.init(new SecretKeySpec(key, ALGORITHM));
+        }
+        catch (GeneralSecurityException e){
+            throw new IllegalStateException("Impossibile inizializzare " + ALGORITHM, e);
+        }
+        this.ttlSeconds = ttl.toSeconds();
+    }
+
+    /**
+     * Crea il token firmato per l'utente indicato, valido da adesso per la durata configurata.
+     *
+     * @param idUser l'ID dell'utente
+     * @return il token da inserire nel link di verifica
+     */
+    public String sign(Long idUser) {
+        long expiresAt = System.currentTimeMillis() / 1000 + ttlSeconds;
+        byte[] payload = (idUser + ":" + expiresAt).getBytes(StandardCharsets.US_ASCII);
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(mac(payload));
+    }
+
+    /**
+     * Verifica firma e scadenza del token.
+     *
+     * @param token il token ricevuto dal link
+     * @return l'ID dell'utente se il token è valido e non scaduto, altrimenti {@code null}
+     */
+    public Long verify(String token) {
+        int separator = token.indexOf('.');
+        if(separator <= 0){
+            return null;
+        }
+        try{
+            byte[] payload = DECODER.decode(token.substring(0, separator));
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            // Confronto a tempo costante, per non rivelare quanti byte della firma sono corretti
+            if(!MessageDigest.isEqual(mac(payload), signature)){
+                return null;
+            }
+            String[] fields = new String(payload, StandardCharsets.US_ASCII).split(":");
+            if(fields.length != 2 || Long.parseLong(fields[1]) < System.currentTimeMillis() / 1000){
+                return null;
+            }
+            return Long.valueOf(fields[0]);
+        }
+        catch (IllegalArgumentException e){
+            // Base64 o numeri non validi
+            return null;
+        }
+    }
+
+    /**
+     * Indica se il token ha il formato di un link firmato, e non quello di un token salvato nel database.
+     *
+     * @param token il token ricevuto dal link
+     * @return {@code true} se il token è nel formato firmato
+     */
+    public static boolean isSigned(String token) {
+        return token != null && token.indexOf('.') > 0;
+    }
+
+    private byte[] mac(byte[] payload) {
+        try{
+            return ((Mac) prototype.clone()).doFinal(payload);
+        }
+        catch (CloneNotSupportedException e){
+            throw new IllegalStateException(ALGORITHM + " non supporta la clonazione", e);
+        }
+    }
+}
@@ -1,24 +1,69 @@
 package springboot.belzedev.it.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import springboot.belzedev.it.models.User;
 import springboot.belzedev.it.repository.UserRepository;
+import springboot.belzedev.it.utils.ExpiringCache;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
+    // Voce della cache: l'ID serve per invalidare la voce anche quando cambia lo username
+    private record CachedPrincipal(Long idUser, UserDetails userDetails) {}
+
     // Inietta il repository che si occupa di accedere ai dati degli utenti
     @Autowired
     private UserRepository userRepository;
 
+    // Cache dei principal già caricati, per evitare una query sul database a ogni richiesta autenticata
+    private final ExpiringCache<String, CachedPrincipal> principals;
+
+    // Durata massima di una voce in cache
+    private final long ttlMillis;
+
+    // Username degli operatori autorizzati all'import massivo degli utenti
+    private final Set<String> importOperators;
+
+    // Durata della risoluzione del principal, servito dalla cache o caricato dal database
+    private final Timer hitTimer;
+    private final Timer missTimer;
+
+    /**
+     * @param maxSize numero massimo di principal mantenuti in cache
+     * @param ttl durata di una voce in cache
+     * @param importOperators username a cui viene concesso il permesso {@link UserImportService#AUTHORITY}
+     * @param registry il registro delle metriche
+     */
+    public CustomUserDetailsService(@Value("${security.principal-cache.max-size:10000}") int maxSize,
+                                    @Value("${security.principal-cache.ttl:5m}") Duration ttl,
+                                    @Value("${users.import.operators:}") String[] importOperators,
+                                    MeterRegistry registry) {
+        this.principals = new ExpiringCache<>(maxSize);
+        this.ttlMillis = ttl.toMillis();
+        this.importOperators = Set.copyOf(Arrays.asList(importOperators));
+        this.hitTimer = lookupTimer("hit", registry);
+        this.missTimer = lookupTimer("miss", registry);
+    }
+
     /**
      * Metodo sovrascritto di `UserDetailsService` per caricare i dettagli di un utente dato lo username.
+     * Il risultato viene servito dalla cache quando disponibile.
      *
      * @param username Lo username dell'utente da cercare.
      * @return Un oggetto `UserDetails` contenente le informazioni dell'utente.
@@ -26,13 +71,74 @@ public class CustomUserDetailsService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        long start = System.nanoTime();
+        CachedPrincipal cached = principals.get(username);
+        if(cached != null){
+            hitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return cached.userDetails();
+        }
+        try{
+            return loadFromRepository(username);
+        }
+        finally{
+            missTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Carica il principal dal database e lo memorizza in cache
+    private UserDetails loadFromRepository(String username) {
         // Cerca l'utente nel database tramite il repository usando lo username
         User user = userRepository.findByUsername(username)
                 // Se l'utente non viene trovato, lancia un'eccezione UsernameNotFoundException
                 .orElseThrow(() -> new UsernameNotFoundException("User non trovato con username: " + username));
         // Restituisce un oggetto UserDetails per l'utente trovato
         // Spring Security richiede un oggetto User che contenga username, password e autorizzazioni
-        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPsw(), new ArrayList<>());
-        // Nota: Attualmente viene restituita una lista vuota di permessi (authorities), ma questo può essere esteso per includere i ruoli dell'utente
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        // L'unico permesso assegnato è quello di import, agli operatori indicati in configurazione
+        if(importOperators.contains(user.getUsername())){
+            authorities.add(new SimpleGrantedAuthority(UserImportService.AUTHORITY));
+        }
+        UserDetails userDetails = new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPsw(), authorities);
+        principals.put(username, new CachedPrincipal(user.getId_user(), userDetails), System.currentTimeMillis() + ttlMillis);
+        return userDetails;
+    }
+
+    private static Timer lookupTimer(String cache, MeterRegistry registry) {
+        return Timer.builder("security.principal.lookup")
+                .description("Durata del caricamento del principal per le richieste autenticate")
+                .tag("cache", cache)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Invalida il principal associato allo username indicato.
+     *
+     * @param username Lo username da rimuovere dalla cache.
+     */
+    public void evict(String username) {
+        if(username != null){
+            principals.invalidate(username);
+        }
+    }
+
+    /**
+     * Invalida il principal associato all'ID utente indicato, qualunque sia lo username con cui è in cache.
+     *
+     * @param idUser L'ID dell'utente da rimuovere dalla cache.
+     */
+    public void evictUser(Long idUser) {
+        if(idUser != null){
+            principals.invalidateIf(cached -> idUser.equals(cached.idUser()));
+        }
+    }
+
+    /**
+     * Restituisce la cache dei principal, per esporne le statistiche.
+     *
+     * @return la cache dei principal
+     */
+    public ExpiringCache<String, ?> getPrincipalCache() {
+        return principals;
     }
 }
@@ -0,0 +1,275 @@
+package springboot.belzedev.it.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import springboot.belzedev.it.enums.OutboxStatus;
+import springboot.belzedev.it.models.EmailOutbox;
+import springboot.belzedev.it.repository.EmailOutboxRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Svuota periodicamente la outbox delle email, inviando i messaggi a lotti.
+ * Ogni lotto viene prima riservato, in una transazione breve, spostandone il prossimo tentativo avanti di un lease;
+ * l'invio avviene fuori da qualsiasi transazione, con un'unica connessione SMTP, e l'esito viene salvato
+ * in una seconda transazione. Se il nodo si ferma durante l'invio, i messaggi tornano disponibili alla scadenza del lease.
+ * I messaggi non consegnati vengono ripianificati con un backoff esponenziale fino al numero massimo di tentativi.
+ */
+@Service
+public class EmailOutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    // Lunghezza massima dell'errore memorizzato sulla riga della outbox
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailService emailService;
+    private final JavaMailSender mailSender;
+    private final TransactionTemplate transactionTemplate;
+
+    // Thread di piattaforma dedicato all'SMTP: JavaMail usa blocchi synchronized durante l'I/O sulla connessione,
+    // che su un virtual thread bloccherebbero il carrier per tutta la durata dell'invio
+    private final ExecutorService smtpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "smtp-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Scheduler dedicato: un server SMTP lento non deve ritardare gli altri task @Scheduled, che condividono un thread
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mail-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration sendTimeout;
+    private final Duration lease;
+    private final long pollIntervalMillis;
+    private final long initialDelayMillis;
+
+    private final MeterRegistry registry;
+
+    /**
+     * Il service delle email e il client SMTP vengono iniettati come proxy lazy:
+     * sono creati al primo messaggio da inviare, non all'avvio.
+     * Il lease deve superare il tempo massimo di invio, altrimenti un altro nodo potrebbe riprendere un lotto ancora in corso.
+     */
+    public EmailOutboxDispatcher(EmailOutboxRepository outboxRepository,
+                                 @Lazy EmailService emailService,
+                                 @Lazy JavaMailSender mailSender,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${mail.outbox.batch-size:50}") int batchSize,
+                                 @Value("${mail.outbox.max-attempts:8}") int maxAttempts,
+                                 @Value("${mail.outbox.initial-backoff:30s}") Duration initialBackoff,
+                                 @Value("${mail.outbox.max-backoff:1h}") Duration maxBackoff,
+                                 @Value("${mail.outbox.send-timeout:2m}") Duration sendTimeout,
+                                 @Value("${mail.outbox.lease:10m}") Duration lease,
+                                 @Value("${mail.outbox.poll-interval-ms:5000}") long pollIntervalMillis,
+                                 @Value("${mail.outbox.initial-delay-ms:10000}") long initialDelayMillis,
+                                 MeterRegistry registry) {
+        if(lease.compareTo(sendTimeout) <= 0){
+            throw new IllegalArgumentException("mail.outbox.lease (" + lease + ") deve superare mail.outbox.send-timeout (" + sendTimeout + ")");
+        }
+        this.outboxRepository = outboxRepository;
+        this.emailService = emailService;
+        this.mailSender = mailSender;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.sendTimeout = sendTimeout;
+        this.lease = lease;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.registry = registry;
+    }
+
+    /**
+     * Avvia lo svuotamento periodico della outbox sullo scheduler dedicato.
+     */
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            // Un'eccezione non gestita fermerebbe le esecuzioni successive
+            try{
+                dispatch();
+            }
+            catch (RuntimeException e){
+                log.error("Svuotamento della outbox fallito", e);
+            }
+        }, initialDelayMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Invia i messaggi in attesa, un lotto alla volta, finché la outbox non contiene più messaggi pronti.
+     */
+    public void dispatch() {
+        try{
+            int processed;
+            do{
+                processed = dispatchBatch();
+            }
+            while(processed == batchSize);
+        }
+        catch (DataAccessException e){
+            log.warn("Outbox email non raggiungibile, nuovo tentativo al prossimo ciclo: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Riserva un lotto di messaggi, lo invia fuori da qualsiasi transazione e ne salva l'esito.
+     *
+     * @return il numero di messaggi elaborati
+     */
+    int dispatchBatch() {
+        List<EmailOutbox> due = transactionTemplate.execute(status -> claimBatch());
+        if(due == null || due.isEmpty()){
+            return 0;
+        }
+        SimpleMailMessage[] messages = due.stream()
+                .map(emailService::toMailMessage)
+                .toArray(SimpleMailMessage[]::new);
+        Map<Object, Exception> failures = Map.of();
+        Exception batchFailure = null;
+        Timer.Sample sample = Timer.start(registry);
+        try{
+            // Un'unica chiamata: il sender apre una sola connessione per tutto il lotto
+            send(messages);
+        }
+        catch (MailSendException e){
+            failures = e.getFailedMessages();
+            // Se non ci sono dettagli per messaggio, l'errore riguarda l'intero lotto (es. connessione)
+            if(failures.isEmpty()){
+                batchFailure = e;
+            }
+        }
+        catch (MailException e){
+            batchFailure = e;
+        }
+        // Esito del lotto: tutto consegnato, consegnato in parte o fallito per intero
+        sample.stop(sendTimer(batchFailure != null ? "failed" : failures.isEmpty() ? "sent" : "partial"));
+
+        LocalDateTime now = LocalDateTime.now();
+        for(int i = 0; i < due.size(); i++){
+            EmailOutbox outbox = due.get(i);
+            Exception failure = batchFailure != null ? batchFailure : failures.get(messages[i]);
+            if(failure == null){
+                outbox.setStatus(OutboxStatus.SENT);
+                outbox.setSentAt(now);
+                outbox.setLastError(null);
+            }
+            else{
+                scheduleRetry(outbox, failure, now);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> outboxRepository.saveAll(due));
+        return due.size();
+    }
+
+    // Blocca un lotto di messaggi pronti e ne sposta il prossimo tentativo alla scadenza del lease:
+    // dopo il commit gli altri nodi non lo vedono più come pronto, anche senza lock
+    private List<EmailOutbox> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailOutbox> due = outboxRepository.findDue(now, PageRequest.of(0, batchSize));
+        LocalDateTime leaseEnd = now.plus(lease);
+        for(EmailOutbox outbox : due){
+            outbox.setNextAttemptAt(leaseEnd);
+        }
+        outboxRepository.saveAll(due);
+        return due;
+    }
+
+    // Invia il lotto sul thread SMTP e ne attende l'esito entro il timeout, riportando gli errori come MailException
+    private void send(SimpleMailMessage[] messages) {
+        Future<?> future = smtpExecutor.submit(() -> mailSender.send(messages));
+        try{
+            future.get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e){
+            if(e.getCause() instanceof MailException mailException){
+                throw mailException;
+            }
+            throw new MailSendException("Invio del lotto fallito", e.getCause());
+        }
+        catch (TimeoutException e){
+            // Il lotto viene ripianificato: se il server lo consegna comunque, il messaggio arriverà due volte
+            future.cancel(true);
+            throw new MailSendException("Invio del lotto oltre il timeout di " + sendTimeout, e);
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new MailSendException("Invio del lotto interrotto", e);
+        }
+    }
+
+    private Timer sendTimer(String outcome) {
+        return Timer.builder("mail.smtp.send")
+                .description("Durata dell'invio SMTP di un lotto della outbox")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Arresta lo scheduler e il thread SMTP alla chiusura del contesto applicativo.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        smtpExecutor.shutdown();
+    }
+
+    // Ripianifica il messaggio con backoff esponenziale, oppure lo marca come fallito dopo l'ultimo tentativo
+    private void scheduleRetry(EmailOutbox outbox, Exception failure, LocalDateTime now) {
+        int attempts = outbox.getAttempts() + 1;
+        outbox.setAttempts(attempts);
+        outbox.setLastError(truncate(failure.getMessage()));
+        if(attempts >= maxAttempts){
+            outbox.setStatus(OutboxStatus.FAILED);
+            log.error("Email {} a {} scartata dopo {} tentativi: {}", outbox.getId(), outbox.getRecipient(), attempts, failure.getMessage());
+            return;
+        }
+        long backoffMillis = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempts - 1, 30));
+        outbox.setNextAttemptAt(now.plus(Duration.ofMillis(backoffMillis)));
+        log.warn("Invio dell'email {} fallito (tentativo {}), nuovo tentativo tra {} ms: {}",
+                outbox.getId(), attempts, backoffMillis, failure.getMessage());
+    }
+
+    private static String truncate(String message) {
+        if(message == null || message.length() <= MAX_ERROR_LENGTH){
+            return message;
+        }
+        return message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -1,30 +1,54 @@
 package springboot.belzedev.it.services;
 
+import org.springframework.context.annotation.Lazy;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import springboot.belzedev.it.models.EmailOutbox;
+import springboot.belzedev.it.repository.EmailOutboxRepository;
 
+/**
+ * Service per le email dell'applicazione: le accoda nella outbox e le prepara per l'invio.
+ * Non serve all'avvio, quindi viene creato al primo utilizzo.
+ */
 @Service
+@Lazy
 public class EmailService {
 
-    private final JavaMailSender mailSender;
+    // Mittente dei messaggi inviati dall'applicazione
+    private static final String FROM = "belzeproject@ygmail.com";
 
-    public EmailService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    private final EmailOutboxRepository outboxRepository;
+
+    public EmailService(EmailOutboxRepository outboxRepository) {
+        this.outboxRepository = outboxRepository;
     }
 
+    /**
+     * Accoda l'email di verifica nella outbox.
+     * Il messaggio viene scritto nella transazione del chiamante e inviato in seguito dal dispatcher,
+     * quindi la richiesta non attende il server SMTP.
+     *
+     * @param to l'indirizzo del destinatario
+     * @param token il token di verifica da includere nel link
+     */
     public void sendVerificationEmail(String to, String token){
-        try{
-            String url = "https://traviam.up.railway.app/api/verify-email?token=" + token;
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom("belzeproject@ygmail.com");
-            message.setTo(to);
-            message.setSubject("Emeil Verification");
-            message.setText("Please verify your email by clicking the link below:\n" + url);
-            mailSender.send(message);
-        }
-        catch (Exception e){
-            e.printStackTrace();
-        }
+        String url = "https://traviam.up.railway.app/api/verify-email?token=" + token;
+        outboxRepository.save(new EmailOutbox(to, "Emeil Verification",
+                "Please verify your email by clicking the link below:\n" + url));
+    }
+
+    /**
+     * Converte un messaggio della outbox nel messaggio da consegnare al server SMTP.
+     *
+     * @param outbox il messaggio della outbox
+     * @return il messaggio email
+     */
+    public SimpleMailMessage toMailMessage(EmailOutbox outbox){
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(FROM);
+        message.setTo(outbox.getRecipient());
+        message.setSubject(outbox.getSubject());
+        message.setText(outbox.getBody());
+        return message;
     }
 }
@@ -1,67 +1,134 @@
 package springboot.belzedev.it.services;
 
 import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import springboot.belzedev.it.datasource.ReplicaRouting;
 import springboot.belzedev.it.enums.ErrorsResponse;
 import springboot.belzedev.it.exceptions.*;
 import springboot.belzedev.it.models.User;
 import springboot.belzedev.it.repository.UserRepository;
+import springboot.belzedev.it.security.BCryptCalibration;
+import springboot.belzedev.it.utils.ConstraintViolations;
+import springboot.belzedev.it.utils.EmailValidator;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class LoginRegisterService {
 
+    private static final Logger log = LoggerFactory.getLogger(LoginRegisterService.class);
+
     @Autowired
     private UserRepository userRepository;
 
+    // Proxy lazy: il service viene creato alla prima registrazione, non all'avvio
     @Autowired
+    @Lazy
     private EmailService emailService;
 
     @Autowired
     private VerificationTokenService tokenService;
     @Autowired
-    private BCryptPasswordEncoder bCryptPasswordEncoder;
+    private PasswordHashingService passwordHashingService;
+    @Autowired
+    private BCryptCalibration bCryptCalibration;
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+    @Autowired
+    private UserAvailabilityIndex availabilityIndex;
+    @Autowired
+    private UserVersionIndex versionIndex;
+
+    // Executor applicativo su cui proseguire con le operazioni sul database dopo l'hashing,
+    // per non occupare i thread dedicati a BCrypt con l'I/O
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor taskExecutor;
+
+    // Transazione che racchiude utente, token di verifica e email in outbox
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     /**
      * Registra un nuovo utente nel sistema dopo aver eseguito diverse validazioni.
+     * L'hashing della password avviene sull'executor dedicato; le eccezioni vengono restituite tramite il future.
+     * L'unicità di email e username viene verificata sull'indice in memoria, che interroga il database solo
+     * in caso di possibile duplicato; resta comunque garantita dai vincoli univoci della tabella {@code users},
+     * e la violazione viene convertita nel codice di errore corrispondente.
      *
      * @Param user L'oggetto User contenente i dettagli dell'utente (email, username, password) da registrare.
+     * @Return Un future completato quando la registrazione è terminata.
      * @Throws InvalidEmailException Se l'email fornita non è valida.
      * @Throws EmailAlreadyExistsException Se l'email è già presente nel database.
      * @Throws UsernameAlreadyExistsException Se lo username è già presente nel database.
      * @Throws PasswordTooShortException Se la password è più corta di 8 caratteri.
+     * @Throws HashingCapacityExceededException Se la coda di hashing è piena.
      */
-    public void register(@Valid User user) throws Exception {
+    public CompletableFuture<Void> register(@Valid User user) {
         // Verifica se l'email fornita è valida
-        if(!isValidEmail(user.getEmail())){
-            throw new InvalidEmailException(ErrorsResponse.INVALID_EMAIL.name());
+        if(!EmailValidator.isValid(user.getEmail())){
+            return CompletableFuture.failedFuture(new InvalidEmailException(ErrorsResponse.INVALID_EMAIL.name()));
         }
-        // Verifica se l'email esiste già nel database
-        else if(userRepository.existsByEmail(user.getEmail())){
-            throw new EmailAlreadyExistsException(ErrorsResponse.EXISTS_EMAIL.name());
+        // Verifica se l'email esiste già, senza accedere al database se l'indice la esclude
+        else if(!availabilityIndex.isEmailAvailable(user.getEmail())){
+            return CompletableFuture.failedFuture(new EmailAlreadyExistsException(ErrorsResponse.EXISTS_EMAIL.name()));
         }
-        // Verifica se lo username esiste già nel database
-        else if(userRepository.existsByUsername(user.getUsername())){
-            throw new UsernameAlreadyExistsException(ErrorsResponse.EXISTS_USERNAME.name());
+        // Verifica se lo username esiste già, senza accedere al database se l'indice lo esclude
+        else if(!availabilityIndex.isUsernameAvailable(user.getUsername())){
+            return CompletableFuture.failedFuture(new UsernameAlreadyExistsException(ErrorsResponse.EXISTS_USERNAME.name()));
         }
         // Verifica se la password è abbastanza lunga (minimo 8 caratteri)
         else if(user.getPsw().length() < 8){
-            throw new PasswordTooShortException(ErrorsResponse.SHORT_PSW.name());
+            return CompletableFuture.failedFuture(new PasswordTooShortException(ErrorsResponse.SHORT_PSW.name()));
         }
-        // Se tutte le validazioni sono passate, cripta la password
-        user.setPsw(bCryptPasswordEncoder.encode(user.getPsw()));
-        // Registra l'utente nel database con email, username e password criptata
-        userRepository.register(user.getEmail(), user.getUsername(), user.getPsw());
-
-        User addedUser = userRepository.findByUsername(user.getUsername()).get();
-        tokenService.createVerificationToken(addedUser);
-
-        String token = tokenService.getTokenForUser(addedUser);
-        emailService.sendVerificationEmail(addedUser.getEmail(), token);
+        // Se tutte le validazioni sono passate, cripta la password sull'executor dedicato
+        return passwordHashingService.encode(user.getPsw())
+                .thenAcceptAsync(hash -> {
+                    try{
+                        // Transazione in scrittura: inserimento e letture successive restano sul primario
+                        transactionTemplate.executeWithoutResult(status -> {
+                            // Inserisce l'utente: l'ID generato viene letto direttamente dalla insert
+                            User addedUser = userRepository.save(
+                                    new User(user.getEmail(), user.getUsername(), hash, false, false, "en"));
+                            // Crea il token di verifica (firmato o salvato) senza rileggerlo dal database
+                            String token = tokenService.issueVerificationToken(addedUser);
+                            // Accoda l'email di verifica nella stessa transazione: verrà inviata dal dispatcher
+                            emailService.sendVerificationEmail(addedUser.getEmail(), token);
+                        });
+                    }
+                    catch (DataIntegrityViolationException e){
+                        throw duplicateUserException(e);
+                    }
+                    availabilityIndex.add(user.getUsername(), user.getEmail());
+                    versionIndex.usersAdded();
+                }, taskExecutor);
+    }
 
+    /**
+     * Converte la violazione di un vincolo univoco della tabella {@code users} nell'eccezione applicativa corrispondente.
+     *
+     * @param e la violazione ricevuta dal database
+     * @return l'eccezione per email o username già esistenti
+     * @throws DataIntegrityViolationException se la violazione non riguarda né l'email né lo username
+     */
+    private RuntimeException duplicateUserException(DataIntegrityViolationException e){
+        ErrorsResponse error = ConstraintViolations.duplicateUserError(e);
+        if(error == ErrorsResponse.EXISTS_EMAIL){
+            return new EmailAlreadyExistsException(error.name());
+        }
+        if(error == ErrorsResponse.EXISTS_USERNAME){
+            return new UsernameAlreadyExistsException(error.name());
+        }
+        throw e;
     }
 
     /**
@@ -69,33 +136,56 @@ public class LoginRegisterService {
      *
      * @Param username Il nome utente fornito dall'utente per l'autenticazione.
      * @Param password La password fornita dall'utente per l'autenticazione.
-     * @Return L'oggetto User autenticato, se username e password sono validi.
+     * @Return Un future con l'oggetto User autenticato, se username e password sono validi.
      * @Throws InvalidUsernameException Se l'username non esiste nel database.
      * @Throws InvalidPasswordException Se la password non corrisponde.
+     * @Throws HashingCapacityExceededException Se la coda di hashing è piena.
      */
-    public User login(String username, String password){
-        // Cerca l'utente nel database in base al nome utente
-        Optional<User> optionalUser = userRepository.findByUsername(username);
+    public CompletableFuture<User> login(String username, String password){
+        // Cerca l'utente in base al nome utente, leggendo dal primario e scavalcando la cache di secondo livello:
+        // le credenziali appena registrate o modificate (anche da un altro nodo) devono essere visibili
+        Optional<User> optionalUser = ReplicaRouting.onPrimary(() -> userRepository.findByUsernameBypassingCache(username));
         // Verifica se l'utente esiste nel database
         if(optionalUser.isPresent()){
             // Recupera l'utente trovato
             User user = optionalUser.get();
             // Confronta la password fornita con quella memorizzata nel database utilizzando BCrypt
-            if(bCryptPasswordEncoder.matches(password, user.getPsw())){
-                // Se la password è corretta, restituisce l'utente
-                return  user;
-            }
-            // Se la password è errata, solleva un'eccezione personalizzata per password non valida
-            else throw new InvalidPasswordException(ErrorsResponse.INVALID_PSW.name());
+            return passwordHashingService.matches(password, user.getPsw())
+                    .thenApply(matches -> {
+                        // Se la password è corretta, restituisce l'utente
+                        if(matches){
+                            // Se l'hash ha un costo inferiore a quello calibrato, lo ricalcola in background
+                            if(bCryptCalibration.needsRehash(user.getPsw())){
+                                rehashPassword(user, password);
+                            }
+                            return user;
+                        }
+                        // Se la password è errata, solleva un'eccezione personalizzata per password non valida
+                        throw new InvalidPasswordException(ErrorsResponse.INVALID_PSW.name());
+                    });
         }
         // Se l'utente non esiste, solleva un'eccezione personalizzata per username non valido
-        else throw new InvalidUsernameException(ErrorsResponse.INVALID_USERNAME.name());
+        else return CompletableFuture.failedFuture(new InvalidUsernameException(ErrorsResponse.INVALID_USERNAME.name()));
     }
 
-    private boolean isValidEmail(String email) {
-        // Regex per una validazione base dell'email
-        String emailRegex = "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$";
-        return email != null && email.matches(emailRegex);
+    /**
+     * Ricalcola l'hash della password con la strength corrente e lo salva, senza ritardare la risposta al login.
+     * Se la coda di hashing è piena l'aggiornamento viene semplicemente rimandato al login successivo.
+     *
+     * @param user L'utente autenticato.
+     * @param password La password in chiaro appena verificata.
+     */
+    private void rehashPassword(User user, String password){
+        passwordHashingService.encode(password)
+                .thenAcceptAsync(hash -> {
+                    userRepository.updatePassword(user.getId_user(), hash);
+                    versionIndex.userChanged(user.getId_user());
+                    userDetailsService.evict(user.getUsername());
+                }, taskExecutor)
+                .exceptionally(e -> {
+                    log.debug("Aggiornamento dell'hash rimandato per l'utente {}: {}", user.getId_user(), e.getMessage());
+                    return null;
+                });
     }
 
 }
@@ -0,0 +1,109 @@
+package springboot.belzedev.it.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import springboot.belzedev.it.enums.ErrorsResponse;
+import springboot.belzedev.it.exceptions.LoginThrottledException;
+import springboot.belzedev.it.utils.RateLimiter;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service che limita i tentativi di login per username e per indirizzo IP, con un token bucket per chiave.
+ * Il controllo avviene prima di qualsiasi accesso al database o confronto BCrypt,
+ * così un attacco di credential stuffing non consuma risorse oltre al limite stabilito.
+ */
+@Service
+public class LoginThrottlingService {
+
+    private final RateLimiter<String> usernameLimiter;
+
+    private final RateLimiter<String> ipLimiter;
+
+    private final Counter usernameRejections;
+    private final Counter ipRejections;
+
+    /**
+     * @param usernameCapacity tentativi consecutivi ammessi per username
+     * @param usernameRefill tempo per ripristinare tutti i tentativi di uno username
+     * @param ipCapacity tentativi consecutivi ammessi per indirizzo IP
+     * @param ipRefill tempo per ripristinare tutti i tentativi di un indirizzo IP
+     * @param maxKeys numero massimo di username e di indirizzi tenuti in memoria
+     * @param registry il registro delle metriche
+     */
+    public LoginThrottlingService(@Value("${security.login-throttle.username.capacity:5}") int usernameCapacity,
+                                  @Value("${security.login-throttle.username.refill:5m}") Duration usernameRefill,
+                                  @Value("${security.login-throttle.ip.capacity:20}") int ipCapacity,
+                                  @Value("${security.login-throttle.ip.refill:1m}") Duration ipRefill,
+                                  @Value("${security.login-throttle.max-keys:100000}") int maxKeys,
+                                  MeterRegistry registry) {
+        this.usernameLimiter = new RateLimiter<>(usernameCapacity, usernameRefill, maxKeys);
+        this.ipLimiter = new RateLimiter<>(ipCapacity, ipRefill, maxKeys);
+        this.usernameRejections = Counter.builder("security.login.throttled")
+                .tag("key", "username")
+                .register(registry);
+        this.ipRejections = Counter.builder("security.login.throttled")
+                .tag("key", "ip")
+                .register(registry);
+        Gauge.builder("security.login.throttle.keys", usernameLimiter, RateLimiter::size)
+                .tag("key", "username")
+                .register(registry);
+        Gauge.builder("security.login.throttle.keys", ipLimiter, RateLimiter::size)
+                .tag("key", "ip")
+                .register(registry);
+    }
+
+    /**
+     * Consuma un tentativo di login per l'indirizzo IP e per lo username indicati.
+     *
+     * @param username lo username con cui si tenta il login
+     * @param clientIp l'indirizzo IP del client
+     * @throws LoginThrottledException se uno dei due limiti è stato superato
+     */
+    public void acquire(String username, String clientIp) {
+        long wait = ipLimiter.tryAcquire(clientIp == null ? "" : clientIp);
+        if(wait > 0){
+            ipRejections.increment();
+            throw throttled(wait);
+        }
+        wait = usernameLimiter.tryAcquire(normalize(username));
+        if(wait > 0){
+            usernameRejections.increment();
+            throw throttled(wait);
+        }
+    }
+
+    /**
+     * Ripristina i tentativi dello username dopo un login riuscito.
+     *
+     * @param username lo username autenticato
+     */
+    public void reset(String username) {
+        usernameLimiter.reset(normalize(username));
+    }
+
+    /**
+     * Elimina periodicamente i bucket inattivi, tornati pieni.
+     */
+    @Scheduled(fixedDelayString = "${security.login-throttle.evict-interval-ms:60000}")
+    public void evictIdle() {
+        usernameLimiter.evictIdle();
+        ipLimiter.evictIdle();
+    }
+
+    private static LoginThrottledException throttled(long waitNanos) {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        return new LoginThrottledException(ErrorsResponse.TOO_MANY_ATTEMPTS.name(), retryAfterSeconds);
+    }
+
+    // Stessa normalizzazione della collation del database, che non distingue maiuscole e minuscole
+    private static String normalize(String username) {
+        return username == null ? "" : username.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,194 @@
+package springboot.belzedev.it.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import springboot.belzedev.it.enums.ErrorsResponse;
+import springboot.belzedev.it.exceptions.HashingCapacityExceededException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Service che esegue le operazioni BCrypt (encode e matches) su un executor dedicato,
+ * dimensionato sul numero di core e con una coda limitata.
+ * In questo modo i thread di Tomcat non restano bloccati sul calcolo dell'hash e,
+ * quando la coda è piena, la richiesta viene rifiutata subito invece di accumularsi.
+ * Le elaborazioni in blocco (import) usano un secondo executor, più piccolo: non occupano mai i thread
+ * e la coda riservati a login e registrazioni.
+ */
+@Service
+public class PasswordHashingService {
+
+    // Attesa tra due tentativi di accodamento per le elaborazioni in blocco
+    private static final long BATCH_RETRY_MILLIS = 5;
+
+    private final BCryptPasswordEncoder passwordEncoder;
+
+    private final ThreadPoolExecutor executor;
+
+    // Executor delle elaborazioni in blocco, separato da quello delle richieste interattive
+    private final ThreadPoolExecutor batchExecutor;
+
+    // Secondi suggeriti al client quando la coda è piena
+    private final long retryAfterSeconds;
+
+    private final Timer queueWaitTimer;
+    private final Timer batchQueueWaitTimer;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedCounter;
+
+    /**
+     * @param passwordEncoder l'encoder BCrypt configurato
+     * @param threads numero di thread dedicati all'hashing (0 = numero di core disponibili)
+     * @param queueCapacity numero massimo di operazioni in attesa
+     * @param retryAfterSeconds secondi restituiti nell'header Retry-After quando la coda è piena
+     * @param batchThreads numero di thread dedicati alle elaborazioni in blocco (0 = un quarto dei core, almeno uno)
+     * @param registry il registro delle metriche
+     */
+    public PasswordHashingService(BCryptPasswordEncoder passwordEncoder,
+                                  @Value("${security.hashing.threads:0}") int threads,
+                                  @Value("${security.hashing.queue-capacity:64}") int queueCapacity,
+                                  @Value("${security.hashing.retry-after-seconds:1}") long retryAfterSeconds,
+                                  @Value("${security.hashing.batch-threads:0}") int batchThreads,
+                                  MeterRegistry registry) {
+        this.passwordEncoder = passwordEncoder;
+        this.retryAfterSeconds = retryAfterSeconds;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int poolSize = threads > 0 ? threads : cores;
+        this.executor = newExecutor("bcrypt-", poolSize, queueCapacity);
+        // Coda lunga quanto il pool: chi elabora in blocco attende che si liberi un posto
+        int batchPoolSize = batchThreads > 0 ? batchThreads : Math.max(1, cores / 4);
+        this.batchExecutor = newExecutor("bcrypt-batch-", batchPoolSize, batchPoolSize);
+
+        this.queueWaitTimer = Timer.builder("security.password.queue.wait")
+                .description("Tempo di attesa in coda prima dell'hashing")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchQueueWaitTimer = Timer.builder("security.password.batch.queue.wait")
+                .description("Tempo di attesa in coda prima dell'hashing delle elaborazioni in blocco")
+                .register(registry);
+        this.encodeTimer = Timer.builder("security.password.hash")
+                .tag("operation", "encode")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.matchesTimer = Timer.builder("security.password.hash")
+                .tag("operation", "matches")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.rejectedCounter = Counter.builder("security.password.rejected")
+                .description("Operazioni rifiutate per coda piena")
+                .register(registry);
+        Gauge.builder("security.password.queue.depth", executor, e -> e.getQueue().size())
+                .register(registry);
+        Gauge.builder("security.password.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(registry);
+        Gauge.builder("security.password.batch.active", batchExecutor, ThreadPoolExecutor::getActiveCount)
+                .register(registry);
+    }
+
+    private static ThreadPoolExecutor newExecutor(String namePrefix, int poolSize, int queueCapacity) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, namePrefix + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Calcola in modo asincrono l'hash BCrypt della password.
+     *
+     * @param rawPassword la password in chiaro
+     * @return un future con l'hash calcolato, oppure fallito con {@link HashingCapacityExceededException} se la coda è piena
+     */
+    public CompletableFuture<String> encode(String rawPassword) {
+        return submit(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Confronta in modo asincrono la password in chiaro con l'hash memorizzato.
+     *
+     * @param rawPassword la password in chiaro
+     * @param encodedPassword l'hash memorizzato
+     * @return un future con l'esito del confronto, oppure fallito con {@link HashingCapacityExceededException} se la coda è piena
+     */
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Calcola in modo asincrono l'hash BCrypt della password per un'elaborazione in blocco (es. import),
+     * sull'executor riservato a queste elaborazioni.
+     * Se la coda è piena, invece di fallire attende che si liberi un posto: va quindi chiamato
+     * solo da thread di lavoro in background, mai da quelli delle richieste interattive.
+     *
+     * @param rawPassword la password in chiaro
+     * @return un future con l'hash calcolato
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa
+     */
+    public CompletableFuture<String> encodeForBatch(String rawPassword) throws InterruptedException {
+        while(true){
+            try{
+                return schedule(batchExecutor, batchQueueWaitTimer, encodeTimer, () -> passwordEncoder.encode(rawPassword));
+            }
+            catch (RejectedExecutionException e){
+                Thread.sleep(BATCH_RETRY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Restituisce il numero di thread dedicati alle elaborazioni in blocco, utile per limitarne le operazioni in volo.
+     *
+     * @return il numero di thread dell'executor delle elaborazioni in blocco
+     */
+    public int getBatchParallelism() {
+        return batchExecutor.getMaximumPoolSize();
+    }
+
+    // Accoda l'operazione, restituendo un future fallito con HashingCapacityExceededException se la coda è piena
+    private <T> CompletableFuture<T> submit(Timer operationTimer, Supplier<T> operation) {
+        try{
+            return schedule(executor, queueWaitTimer, operationTimer, operation);
+        }
+        catch (RejectedExecutionException e){
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(
+                    new HashingCapacityExceededException(ErrorsResponse.SERVER_BUSY.name(), retryAfterSeconds));
+        }
+    }
+
+    // Accoda l'operazione misurando il tempo di attesa in coda e quello di esecuzione
+    private static <T> CompletableFuture<T> schedule(ThreadPoolExecutor target, Timer waitTimer,
+                                                     Timer operationTimer, Supplier<T> operation) {
+        long enqueuedAt = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            waitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+            return operationTimer.record(operation);
+        }, target);
+    }
+
+    /**
+     * Arresta gli executor alla chiusura del contesto applicativo.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        batchExecutor.shutdown();
+    }
+}
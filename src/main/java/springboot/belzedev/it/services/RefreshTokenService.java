@@ -0,0 +1,231 @@
+package springboot.belzedev.it.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import springboot.belzedev.it.enums.ErrorsResponse;
+import springboot.belzedev.it.exceptions.InvalidRefreshTokenException;
+import springboot.belzedev.it.exceptions.RefreshInProgressException;
+import springboot.belzedev.it.models.RefreshToken;
+import springboot.belzedev.it.models.User;
+import springboot.belzedev.it.repository.RefreshTokenRepository;
+import springboot.belzedev.it.repository.UserRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Service per i refresh token, con cui il client ottiene un nuovo access token senza ripetere il login
+ * e quindi senza alcun hashing BCrypt.
+ * Il token è un valore casuale opaco; nel database ne viene salvato solo l'hash SHA-256, cercato tramite indice univoco.
+ * A ogni utilizzo il token viene ruotato: quello presentato viene segnato come usato con un update condizionale
+ * e ne viene emesso uno nuovo della stessa famiglia. Se un token già usato viene presentato di nuovo
+ * (riuso, segno di un token rubato) l'intera famiglia viene revocata insieme agli access token dell'utente.
+ * Fanno eccezione le richieste concorrenti dello stesso client: l'immediato predecessore del token valido,
+ * presentato entro {@code security.refresh-token.reuse-grace} dalla sua rotazione, viene rifiutato
+ * senza revocare nulla, perché il successore è già stato consegnato alla richiesta che ha vinto.
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final int TOKEN_BYTES = 32;
+    private static final int FAMILY_BYTES = 16;
+
+    /**
+     * Esito della rotazione: l'utente a cui emettere il nuovo access token e il nuovo refresh token.
+     */
+    public record Rotation(User user, String refreshToken) {}
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+    private final TokenRevocationService revocationService;
+    private final TransactionTemplate transactionTemplate;
+    private final SecureRandom random = new SecureRandom();
+
+    private final Duration ttl;
+    private final Duration reuseGrace;
+    private final int purgeBatchSize;
+
+    private final Counter reuseCounter;
+
+    /**
+     * @param refreshTokenRepository il repository dei refresh token
+     * @param userRepository il repository degli utenti
+     * @param revocationService il servizio di revoca degli access token
+     * @param transactionTemplate la transazione che racchiude la rotazione
+     * @param ttl la validità di un refresh token, rinnovata a ogni rotazione
+     * @param reuseGrace per quanto tempo dopo la rotazione il predecessore viene trattato come richiesta concorrente
+     * @param purgeBatchSize il numero massimo di token scaduti cancellati per query
+     * @param registry il registro delle metriche
+     */
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               UserRepository userRepository,
+                               TokenRevocationService revocationService,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${security.refresh-token.ttl:14d}") Duration ttl,
+                               @Value("${security.refresh-token.reuse-grace:30s}") Duration reuseGrace,
+                               @Value("${security.refresh-token.purge-batch-size:1000}") int purgeBatchSize,
+                               MeterRegistry registry) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepository = userRepository;
+        this.revocationService = revocationService;
+        this.transactionTemplate = transactionTemplate;
+        this.ttl = ttl;
+        this.reuseGrace = reuseGrace;
+        this.purgeBatchSize = purgeBatchSize;
+        this.reuseCounter = Counter.builder("security.refresh.reuse")
+                .description("Refresh token già usati presentati di nuovo")
+                .register(registry);
+    }
+
+    /**
+     * Emette il refresh token di una nuova famiglia, dopo un login riuscito.
+     *
+     * @param idUser l'ID dell'utente autenticato
+     * @return il refresh token da consegnare al client
+     */
+    public String issue(Long idUser) {
+        byte[] family = new byte[FAMILY_BYTES];
+        random.nextBytes(family);
+        return store(idUser, family);
+    }
+
+    /**
+     * Ruota il refresh token: lo segna come usato e ne emette uno nuovo della stessa famiglia.
+     *
+     * @param token il refresh token presentato dal client
+     * @return l'utente e il nuovo refresh token
+     * @throws InvalidRefreshTokenException se il token non esiste, è scaduto, è già stato usato o l'utente non esiste più
+     * @throws RefreshInProgressException se il token è stato appena ruotato da una richiesta concorrente
+     */
+    public Rotation rotate(String token) {
+        RefreshToken stored = token == null ? null : refreshTokenRepository.findByHash(hash(token)).orElse(null);
+        LocalDateTime now = LocalDateTime.now();
+        if(stored == null || !stored.getExpires_at().isAfter(now)){
+            throw invalid();
+        }
+        if(stored.isUsed()){
+            if(isConcurrentRotation(stored, now)){
+                throw inProgress();
+            }
+            onReuse(stored);
+            throw invalid();
+        }
+        Rotation rotation = transactionTemplate.execute(status -> {
+            // Delle richieste concorrenti con lo stesso token ne vince una sola
+            if(refreshTokenRepository.markUsed(stored.getId(), now) == 0){
+                return null;
+            }
+            User user = userRepository.findById(stored.getId_user()).orElseThrow(RefreshTokenService::invalid);
+            return new Rotation(user, store(user.getId_user(), stored.getFamily()));
+        });
+        if(rotation == null){
+            // Il token è stato ruotato tra la lettura e l'update da una richiesta concorrente
+            throw inProgress();
+        }
+        return rotation;
+    }
+
+    /**
+     * Revoca la famiglia del refresh token indicato (logout). I token sconosciuti vengono ignorati.
+     *
+     * @param token il refresh token presentato dal client
+     */
+    public void revoke(String token) {
+        if(token != null){
+            refreshTokenRepository.findByHash(hash(token))
+                    .ifPresent(stored -> refreshTokenRepository.deleteFamily(stored.getFamily()));
+        }
+    }
+
+    /**
+     * Revoca tutti i refresh token dell'utente (cambio password, cancellazione dell'account).
+     *
+     * @param idUser l'ID dell'utente
+     */
+    public void revokeAll(Long idUser) {
+        if(idUser != null){
+            refreshTokenRepository.deleteByUser(idUser);
+        }
+    }
+
+    /**
+     * Restituisce la validità di un refresh token.
+     *
+     * @return la validità
+     */
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Cancella a lotti i refresh token scaduti.
+     */
+    @Scheduled(fixedDelayString = "${security.refresh-token.purge-interval-ms:3600000}")
+    public void purge() {
+        try{
+            LocalDateTime now = LocalDateTime.now();
+            int deleted;
+            do{
+                deleted = refreshTokenRepository.deleteExpired(now, purgeBatchSize);
+            }
+            while(deleted == purgeBatchSize);
+        }
+        catch (DataAccessException e){
+            log.warn("Cancellazione dei refresh token scaduti fallita: {}", e.getMessage());
+        }
+    }
+
+    private String store(Long idUser, byte[] family) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        refreshTokenRepository.save(new RefreshToken(hash(token), family, idUser, LocalDateTime.now().plus(ttl)));
+        return token;
+    }
+
+    // Token ruotato da meno di reuseGrace e il cui successore non è ancora stato usato
+    private boolean isConcurrentRotation(RefreshToken stored, LocalDateTime now) {
+        return stored.getUsed_at() != null
+                && stored.getUsed_at().plus(reuseGrace).isAfter(now)
+                && !refreshTokenRepository.existsUsedAfter(stored.getFamily(), stored.getId());
+    }
+
+    // Riuso di un token già ruotato: revoca la famiglia e gli access token dell'utente
+    private void onReuse(RefreshToken stored) {
+        reuseCounter.increment();
+        log.warn("Riuso di un refresh token dell'utente {}: famiglia revocata", stored.getId_user());
+        refreshTokenRepository.deleteFamily(stored.getFamily());
+        revocationService.revokeAll(stored.getId_user());
+    }
+
+    private static byte[] hash(String token) {
+        try{
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+        }
+        catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    private static InvalidRefreshTokenException invalid() {
+        return new InvalidRefreshTokenException(ErrorsResponse.INVALID_TOKEN.name());
+    }
+
+    private static RefreshInProgressException inProgress() {
+        return new RefreshInProgressException(ErrorsResponse.TOKEN_ALREADY_ROTATED.name());
+    }
+}
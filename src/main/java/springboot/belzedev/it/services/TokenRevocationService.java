@@ -0,0 +1,214 @@
+package springboot.belzedev.it.services;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import springboot.belzedev.it.models.TokenRevocation;
+import springboot.belzedev.it.repository.TokenRevocationRepository;
+import springboot.belzedev.it.utils.JwtUtil;
+import springboot.belzedev.it.utils.RevocationList;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+
+/**
+ * Service per la revoca dei token JWT: logout del singolo token e revoca di tutti i token di un utente
+ * (cambio password, cancellazione dell'account).
+ * Il controllo a ogni richiesta avviene sulla {@link RevocationList} in memoria, senza accedere al database;
+ * le revoche vengono salvate nella tabella {@code token_revocations} (il jti come UUID in 16 byte),
+ * ricaricate all'avvio e lette periodicamente per ricevere quelle delle altre istanze.
+ * La lettura periodica usa una finestra su {@code revoked_at} che si sovrappone alla precedente:
+ * una revoca scritta prima ma confermata dopo la lettura precedente viene comunque ricevuta,
+ * e applicare di nuovo una revoca già nota non ha effetti.
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    private final TokenRevocationRepository revocationRepository;
+    private final RevocationList revocations;
+    private final long tokenTtlMillis;
+    private final int purgeBatchSize;
+    private final long syncOverlapMillis;
+
+    // Istante (epoch millis) dell'ultima lettura dal database; 0 finché le revoche non sono state caricate
+    private volatile long lastSyncMillis;
+
+    /**
+     * @param revocationRepository il repository delle revoche
+     * @param jwtUtil il componente che emette i token, da cui si ricava la loro durata
+     * @param bucket l'ampiezza dei bucket di scadenza
+     * @param purgeBatchSize il numero massimo di revoche scadute cancellate per query
+     * @param syncOverlap di quanto ogni lettura torna indietro rispetto alla precedente: deve coprire la durata massima
+     *                    di una transazione e lo scarto tra gli orologi delle istanze
+     * @param registry il registro delle metriche
+     */
+    public TokenRevocationService(TokenRevocationRepository revocationRepository,
+                                  JwtUtil jwtUtil,
+                                  @Value("${security.revocation.bucket:1m}") Duration bucket,
+                                  @Value("${security.revocation.purge-batch-size:1000}") int purgeBatchSize,
+                                  @Value("${security.revocation.sync-overlap:2m}") Duration syncOverlap,
+                                  MeterRegistry registry) {
+        this.revocationRepository = revocationRepository;
+        this.revocations = new RevocationList(bucket.toMillis());
+        this.tokenTtlMillis = jwtUtil.getTokenTtl().toMillis();
+        this.purgeBatchSize = purgeBatchSize;
+        this.syncOverlapMillis = syncOverlap.toMillis();
+        Gauge.builder("security.revocation.tokens", revocations, RevocationList::tokenCount)
+                .description("Token revocati singolarmente e non ancora scaduti")
+                .register(registry);
+        Gauge.builder("security.revocation.users", revocations, RevocationList::userCount)
+                .description("Utenti con tutti i token revocati")
+                .register(registry);
+    }
+
+    /**
+     * Indica se il token è stato revocato, singolarmente o insieme a tutti quelli del suo utente.
+     *
+     * @param claims i claims del token già verificato
+     * @return {@code true} se il token è revocato
+     */
+    public boolean isRevoked(Claims claims) {
+        if(claims.getId() != null && claims.getExpiration() != null
+                && revocations.isTokenRevoked(claims.getId(), claims.getExpiration().getTime())){
+            return true;
+        }
+        Long idUser = claims.get("idUser", Long.class);
+        return idUser != null && claims.getIssuedAt() != null
+                && revocations.isUserRevoked(idUser, JwtUtil.issuedAtMillis(claims));
+    }
+
+    /**
+     * Revoca il token indicato (logout). I token emessi prima dell'introduzione del jti non sono
+     * identificabili singolarmente: per questi vengono revocati tutti i token dell'utente.
+     *
+     * @param claims i claims del token già verificato
+     */
+    public void revoke(Claims claims) {
+        UUID jti = parseJti(claims.getId());
+        if(jti == null){
+            revokeAll(claims.get("idUser", Long.class));
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = claims.getExpiration().getTime();
+        revocations.revokeToken(claims.getId(), expiresAt, now);
+        revocationRepository.save(new TokenRevocation(toBytes(jti), null, toDateTime(now), toDateTime(expiresAt)));
+    }
+
+    /**
+     * Revoca tutti i token dell'utente emessi finora, compresi quelli emessi nello stesso millisecondo della revoca.
+     *
+     * @param idUser l'ID dell'utente
+     */
+    public void revokeAll(Long idUser) {
+        if(idUser == null){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = now + tokenTtlMillis;
+        revocations.revokeUser(idUser, now, expiresAt);
+        revocationRepository.save(new TokenRevocation(null, idUser, toDateTime(now), toDateTime(expiresAt)));
+    }
+
+    /**
+     * All'avvio carica le revoche ancora valide.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        sync();
+    }
+
+    /**
+     * Legge le revoche registrate nel frattempo, anche dalle altre istanze.
+     */
+    @Scheduled(fixedDelayString = "${security.revocation.sync-interval-ms:5000}")
+    public void sync() {
+        try{
+            long now = System.currentTimeMillis();
+            long since = lastSyncMillis == 0 ? 0 : lastSyncMillis - syncOverlapMillis;
+            for(TokenRevocation revocation : revocationRepository.findActiveRevokedSince(toDateTime(since), toDateTime(now))){
+                apply(revocation, now);
+            }
+            lastSyncMillis = now;
+        }
+        catch (DataAccessException e){
+            log.warn("Sincronizzazione delle revoche fallita, nuovo tentativo al prossimo ciclo: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Scarta i bucket dei token ormai scaduti e cancella le righe corrispondenti.
+     */
+    @Scheduled(fixedDelayString = "${security.revocation.purge-interval-ms:60000}")
+    public void purge() {
+        long now = System.currentTimeMillis();
+        revocations.purge(now);
+        try{
+            LocalDateTime cutoff = toDateTime(now);
+            int deleted;
+            do{
+                deleted = revocationRepository.deleteExpired(cutoff, purgeBatchSize);
+            }
+            while(deleted == purgeBatchSize);
+        }
+        catch (DataAccessException e){
+            log.warn("Cancellazione delle revoche scadute fallita: {}", e.getMessage());
+        }
+    }
+
+    private void apply(TokenRevocation revocation, long now) {
+        long expiresAt = toMillis(revocation.getExpires_at());
+        if(revocation.getJti() != null){
+            revocations.revokeToken(toUuid(revocation.getJti()).toString(), expiresAt, now);
+        }
+        else if(revocation.getId_user() != null){
+            revocations.revokeUser(revocation.getId_user(), toMillis(revocation.getRevoked_at()), expiresAt);
+        }
+    }
+
+    private static UUID parseJti(String jti) {
+        if(jti == null){
+            return null;
+        }
+        try{
+            return UUID.fromString(jti);
+        }
+        catch (IllegalArgumentException e){
+            return null;
+        }
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    private static UUID toUuid(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
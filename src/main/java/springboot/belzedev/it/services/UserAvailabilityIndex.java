@@ -0,0 +1,267 @@
+package springboot.belzedev.it.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springboot.belzedev.it.datasource.ReplicaRouting;
+import springboot.belzedev.it.dto.UserSummary;
+import springboot.belzedev.it.repository.UserRepository;
+import springboot.belzedev.it.utils.BloomFilter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Indice in memoria di username ed email già registrati, basato su filtri di Bloom.
+ * Se il filtro esclude un valore, questo è sicuramente libero e la verifica non tocca il database;
+ * solo nel caso di un possibile positivo si ricorre al repository.
+ * L'indice viene costruito all'avvio leggendo la tabella {@code users} e ricostruito periodicamente,
+ * così i valori degli utenti cancellati smettono di produrre falsi positivi.
+ * Gli utenti inseriti dagli altri nodi vengono letti ogni {@code users.availability.sync-interval-ms}
+ * a partire dall'ID più alto già visto: un valore appena registrato altrove può quindi risultare libero
+ * per al più un intervallo. La lettura riparte dall'ID più alto di {@code users.availability.sync-overlap} prima,
+ * perché gli ID vengono assegnati all'inserimento e le transazioni possono confermarli in un ordine diverso.
+ */
+@Service
+public class UserAvailabilityIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(UserAvailabilityIndex.class);
+
+    // Utenti letti per pagina durante la sincronizzazione
+    private static final int SYNC_PAGE_SIZE = 1000;
+
+    // Coppia di filtri: uno per gli username e uno per le email
+    private record Filters(BloomFilter usernames, BloomFilter emails) {}
+
+    // ID più alto presente nell'indice all'istante indicato (epoch millis)
+    private record Mark(long atMillis, long maxIdUser) {}
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final long expectedUsers;
+
+    private final double falsePositiveRate;
+
+    private final long syncOverlapMillis;
+
+    private final LongSupplier clock;
+
+    // Filtri in uso; null finché l'indice non è stato costruito, e in quel caso si interroga sempre il database
+    private volatile Filters current;
+
+    // Filtri in costruzione, che ricevono anche gli inserimenti avvenuti durante la ricostruzione
+    private volatile Filters rebuilding;
+
+    // Serializza ricostruzione e sincronizzazione
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    // Riferimenti delle ultime letture, in ordine di tempo; protetti da indexLock
+    private final List<Mark> marks = new ArrayList<>();
+
+    private final Counter definiteNegatives;
+    private final Counter repositoryFallbacks;
+
+    /**
+     * @param userRepository il repository degli utenti
+     * @param transactionManager il transaction manager, per leggere la tabella in streaming
+     * @param expectedUsers numero minimo di utenti per cui dimensionare i filtri
+     * @param falsePositiveRate probabilità di falso positivo desiderata
+     * @param syncOverlap quanto a ritroso rileggere gli ID già visti, oltre la durata massima di una transazione
+     * @param registry il registro delle metriche
+     */
+    @Autowired
+    public UserAvailabilityIndex(UserRepository userRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${users.availability.expected-users:100000}") long expectedUsers,
+                                 @Value("${users.availability.false-positive-rate:0.01}") double falsePositiveRate,
+                                 @Value("${users.availability.sync-overlap:2m}") Duration syncOverlap,
+                                 MeterRegistry registry) {
+        this(userRepository, transactionManager, expectedUsers, falsePositiveRate, syncOverlap, registry, System::currentTimeMillis);
+    }
+
+    UserAvailabilityIndex(UserRepository userRepository, PlatformTransactionManager transactionManager, long expectedUsers,
+                          double falsePositiveRate, Duration syncOverlap, MeterRegistry registry, LongSupplier clock) {
+        this.userRepository = userRepository;
+        this.syncOverlapMillis = syncOverlap.toMillis();
+        this.clock = clock;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.definiteNegatives = Counter.builder("users.availability.checks")
+                .tag("result", "negative")
+                .description("Verifiche risolte dal filtro senza accedere al database")
+                .register(registry);
+        this.repositoryFallbacks = Counter.builder("users.availability.checks")
+                .tag("result", "fallback")
+                .description("Verifiche che hanno richiesto una query sul database")
+                .register(registry);
+    }
+
+    /**
+     * Ricostruisce i filtri leggendo in streaming tutti gli utenti.
+     * Viene eseguita subito all'avvio e poi a intervalli regolari; in caso di errore resta in uso l'indice precedente.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${users.availability.rebuild-interval-ms:86400000}")
+    public void rebuild() {
+        // Lock esplicito invece di synchronized: la ricostruzione legge dal database
+        // e non deve bloccare il carrier quando gira su un virtual thread
+        indexLock.lock();
+        try{
+            long startedAt = clock.getAsLong();
+            // Dimensiona i filtri lasciando spazio alla crescita fino alla prossima ricostruzione
+            long capacity = Math.max(expectedUsers, userRepository.count() * 2);
+            Filters next = new Filters(BloomFilter.create(capacity, falsePositiveRate),
+                    BloomFilter.create(capacity, falsePositiveRate));
+            rebuilding = next;
+            long[] maxIdUser = {0};
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try(Stream<UserSummary> users = userRepository.streamAll()){
+                    users.forEach(user -> {
+                        put(next, user.getUsername(), user.getEmail());
+                        maxIdUser[0] = Math.max(maxIdUser[0], user.getId_user());
+                    });
+                }
+            });
+            current = next;
+            mark(startedAt, maxIdUser[0]);
+            log.info("Indice di disponibilità ricostruito, dimensionato per {} utenti", capacity);
+        }
+        catch (DataAccessException e){
+            log.warn("Costruzione dell'indice di disponibilità fallita, nuovo tentativo al prossimo ciclo: {}", e.getMessage());
+        }
+        finally {
+            rebuilding = null;
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * Aggiunge all'indice gli utenti inseriti dagli altri nodi, leggendo dal primario gli ID successivi
+     * a quello più alto già visto {@code users.availability.sync-overlap} fa.
+     * Subito dopo l'avvio, finché non esiste un riferimento così vecchio, la lettura parte da quello della costruzione.
+     */
+    @Scheduled(initialDelayString = "${users.availability.sync-interval-ms:5000}",
+            fixedDelayString = "${users.availability.sync-interval-ms:5000}")
+    public void syncNewUsers() {
+        indexLock.lock();
+        try{
+            if(current == null || marks.isEmpty()){
+                return;
+            }
+            long now = clock.getAsLong();
+            long after = syncFrom(now);
+            long maxIdUser = marks.get(marks.size() - 1).maxIdUser();
+            List<UserSummary> page;
+            do{
+                long cursor = after;
+                page = ReplicaRouting.onPrimary(() -> userRepository.findPageAfter(cursor, PageRequest.ofSize(SYNC_PAGE_SIZE)));
+                for(UserSummary user : page){
+                    add(user.getUsername(), user.getEmail());
+                    after = user.getId_user();
+                }
+            }
+            while(page.size() == SYNC_PAGE_SIZE);
+            mark(now, Math.max(maxIdUser, after));
+        }
+        catch (DataAccessException e){
+            log.warn("Sincronizzazione dell'indice di disponibilità fallita, nuovo tentativo al prossimo ciclo: {}", e.getMessage());
+        }
+        finally {
+            indexLock.unlock();
+        }
+    }
+
+    // ID da cui ripartire: il più alto già visto almeno syncOverlap fa; i riferimenti più vecchi non servono più
+    private long syncFrom(long now) {
+        long cutoff = now - syncOverlapMillis;
+        while(marks.size() > 1 && marks.get(1).atMillis() <= cutoff){
+            marks.remove(0);
+        }
+        return marks.get(0).maxIdUser();
+    }
+
+    private void mark(long atMillis, long maxIdUser) {
+        marks.add(new Mark(atMillis, maxIdUser));
+    }
+
+    /**
+     * Registra nell'indice username ed email di un utente appena salvato.
+     * Va chiamato dopo il commit della transazione che ha inserito l'utente.
+     *
+     * @param username lo username dell'utente
+     * @param email l'email dell'utente
+     */
+    public void add(String username, String email) {
+        Filters filters = current;
+        if(filters != null){
+            put(filters, username, email);
+        }
+        Filters pending = rebuilding;
+        if(pending != null){
+            put(pending, username, email);
+        }
+    }
+
+    /**
+     * Verifica se lo username è libero.
+     *
+     * @param username lo username da verificare
+     * @return {@code true} se nessun utente usa lo username indicato
+     */
+    public boolean isUsernameAvailable(String username) {
+        Filters filters = current;
+        if(filters != null && !filters.usernames().mightContain(normalize(username))){
+            definiteNegatives.increment();
+            return true;
+        }
+        repositoryFallbacks.increment();
+        return !userRepository.existsByUsername(username);
+    }
+
+    /**
+     * Verifica se l'email è libera.
+     *
+     * @param email l'email da verificare
+     * @return {@code true} se nessun utente usa l'email indicata
+     */
+    public boolean isEmailAvailable(String email) {
+        Filters filters = current;
+        if(filters != null && !filters.emails().mightContain(normalize(email))){
+            definiteNegatives.increment();
+            return true;
+        }
+        repositoryFallbacks.increment();
+        return !userRepository.existsByEmail(email);
+    }
+
+    private static void put(Filters filters, String username, String email) {
+        if(username != null){
+            filters.usernames().put(normalize(username));
+        }
+        if(email != null){
+            filters.emails().put(normalize(email));
+        }
+    }
+
+    // Stessa normalizzazione della collation del database, che non distingue maiuscole e minuscole
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,295 @@
+package springboot.belzedev.it.services;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import springboot.belzedev.it.dto.UserImportResult;
+import springboot.belzedev.it.enums.ErrorsResponse;
+import springboot.belzedev.it.utils.ConstraintViolations;
+import springboot.belzedev.it.utils.EmailValidator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Service per l'import massivo di utenti da un file NDJSON o CSV, ad esempio per trasferire giocatori tra mondi.
+ * Il file viene letto in streaming e gestito a lotti: per ogni lotto le righe vengono validate,
+ * le password vengono criptate in parallelo sull'executor BCrypt riservato alle elaborazioni in blocco
+ * e gli utenti inseriti con un'unica insert JDBC in batch.
+ * In memoria resta al più un lotto, e l'esito di ogni riga viene restituito al chiamante appena il lotto è concluso.
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    /**
+     * Permesso richiesto per l'import, assegnato agli utenti elencati in {@code users.import.operators}.
+     */
+    public static final String AUTHORITY = "USERS_IMPORT";
+
+    private static final String INSERT_SQL =
+            "insert into users(email, username, psw, verified, theme, lang) values (?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Riga del file di import. I campi {@code verified}, {@code theme} e {@code lang} sono facoltativi.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record ImportRow(String email, String username, String psw, Boolean verified, Boolean theme, String lang) {}
+
+    // Stato di una riga durante l'elaborazione del lotto
+    private static final class PendingRow {
+        final int line;
+        ImportRow row;
+        CompletableFuture<String> hash;
+        UserImportResult result;
+
+        PendingRow(int line) {
+            this.line = line;
+        }
+
+        String username() {
+            return row != null ? row.username() : null;
+        }
+
+        void fail(ErrorsResponse error) {
+            result = new UserImportResult(line, username(), false, error.name());
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PasswordHashingService passwordHashingService;
+    private final UserAvailabilityIndex availabilityIndex;
+    private final UserVersionIndex versionIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    // Numero di righe elaborate e inserite insieme
+    private final int batchSize;
+
+    public UserImportService(JdbcTemplate jdbcTemplate,
+                             PasswordHashingService passwordHashingService,
+                             UserAvailabilityIndex availabilityIndex,
+                             UserVersionIndex versionIndex,
+                             TransactionTemplate transactionTemplate,
+                             ObjectMapper objectMapper,
+                             @Value("${users.import.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.passwordHashingService = passwordHashingService;
+        this.availabilityIndex = availabilityIndex;
+        this.versionIndex = versionIndex;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Importa gli utenti letti dal flusso indicato.
+     * In formato NDJSON ogni riga è un oggetto JSON; in formato CSV la prima riga è l'intestazione con i nomi dei campi
+     * ({@code email,username,psw} più eventualmente {@code verified,theme,lang}) e i valori non possono contenere virgole.
+     *
+     * @param input il contenuto del file
+     * @param csv {@code true} per il formato CSV, {@code false} per NDJSON
+     * @param report riceve l'esito di ogni riga, nell'ordine del file
+     * @throws IOException se la lettura del flusso fallisce
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa dell'hashing
+     */
+    public void importUsers(InputStream input, boolean csv, Consumer<UserImportResult> report)
+            throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        List<PendingRow> batch = new ArrayList<>(batchSize);
+        String[] header = null;
+        int lineNumber = 0;
+        String line;
+        while((line = reader.readLine()) != null){
+            lineNumber++;
+            if(line.isBlank()){
+                continue;
+            }
+            if(csv && header == null){
+                header = line.trim().split(",", -1);
+                continue;
+            }
+            PendingRow pending = new PendingRow(lineNumber);
+            try{
+                pending.row = csv ? parseCsv(header, line) : objectMapper.readValue(line, ImportRow.class);
+            }
+            catch (JsonProcessingException | IllegalArgumentException e){
+                pending.fail(ErrorsResponse.INVALID_ROW);
+            }
+            batch.add(pending);
+            if(batch.size() >= batchSize){
+                processBatch(batch, report);
+                batch.clear();
+            }
+        }
+        if(!batch.isEmpty()){
+            processBatch(batch, report);
+        }
+    }
+
+    // Valida, cripta e inserisce un lotto, poi ne riporta gli esiti
+    private void processBatch(List<PendingRow> batch, Consumer<UserImportResult> report) throws InterruptedException {
+        validate(batch);
+        hash(batch);
+        insert(batch);
+        versionIndex.usersAdded();
+        batch.forEach(pending -> report.accept(pending.result));
+    }
+
+    // Stessi controlli della registrazione, più i duplicati all'interno del lotto
+    private void validate(List<PendingRow> batch) {
+        Set<String> emails = new HashSet<>();
+        Set<String> usernames = new HashSet<>();
+        for(PendingRow pending : batch){
+            if(pending.result != null){
+                continue;
+            }
+            ImportRow row = pending.row;
+            if(!EmailValidator.isValid(row.email())){
+                pending.fail(ErrorsResponse.INVALID_EMAIL);
+            }
+            else if(row.username() == null || row.username().isBlank()){
+                pending.fail(ErrorsResponse.INVALID_USERNAME);
+            }
+            else if(row.psw() == null || row.psw().length() < 8){
+                pending.fail(ErrorsResponse.SHORT_PSW);
+            }
+            else if(!emails.add(normalize(row.email())) || !availabilityIndex.isEmailAvailable(row.email())){
+                pending.fail(ErrorsResponse.EXISTS_EMAIL);
+            }
+            else if(!usernames.add(normalize(row.username())) || !availabilityIndex.isUsernameAvailable(row.username())){
+                pending.fail(ErrorsResponse.EXISTS_USERNAME);
+            }
+        }
+    }
+
+    // Cripta le password in parallelo, tenendo in volo al più un'operazione per thread BCrypt delle elaborazioni in blocco
+    private void hash(List<PendingRow> batch) throws InterruptedException {
+        ArrayDeque<PendingRow> inFlight = new ArrayDeque<>();
+        int parallelism = passwordHashingService.getBatchParallelism();
+        for(PendingRow pending : batch){
+            if(pending.result != null){
+                continue;
+            }
+            if(inFlight.size() >= parallelism){
+                awaitQuietly(inFlight.poll().hash);
+            }
+            pending.hash = passwordHashingService.encodeForBatch(pending.row.psw());
+            inFlight.add(pending);
+        }
+        for(PendingRow pending : inFlight){
+            awaitQuietly(pending.hash);
+        }
+        for(PendingRow pending : batch){
+            if(pending.result == null && pending.hash.isCompletedExceptionally()){
+                pending.fail(ErrorsResponse.SERVER_ERROR);
+            }
+        }
+    }
+
+    // Inserisce il lotto con una insert JDBC in batch; se un vincolo univoco viene violato
+    // (es. utente creato nel frattempo), ripiega su inserimenti singoli, ognuno nella propria transazione,
+    // per individuare le righe in errore
+    private void insert(List<PendingRow> batch) {
+        List<PendingRow> rows = batch.stream().filter(pending -> pending.result == null).toList();
+        if(rows.isEmpty()){
+            return;
+        }
+        try{
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (statement, pending) -> {
+                        Object[] values = insertValues(pending);
+                        for(int i = 0; i < values.length; i++){
+                            statement.setObject(i + 1, values[i]);
+                        }
+                    }));
+            rows.forEach(this::succeed);
+        }
+        catch (DataIntegrityViolationException e){
+            log.debug("Insert in batch fallita, inserimento riga per riga: {}", e.getMessage());
+            for(PendingRow pending : rows){
+                try{
+                    transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(INSERT_SQL, insertValues(pending)));
+                    succeed(pending);
+                }
+                catch (DataIntegrityViolationException rowError){
+                    ErrorsResponse error = ConstraintViolations.duplicateUserError(rowError);
+                    pending.fail(error != null ? error : ErrorsResponse.INVALID_ROW);
+                }
+            }
+        }
+    }
+
+    private Object[] insertValues(PendingRow pending) {
+        ImportRow row = pending.row;
+        return new Object[]{
+                row.email().trim(),
+                row.username().trim(),
+                pending.hash.join(),
+                Boolean.TRUE.equals(row.verified()),
+                Boolean.TRUE.equals(row.theme()),
+                row.lang() != null && !row.lang().isBlank() ? row.lang().trim() : "en"
+        };
+    }
+
+    private void succeed(PendingRow pending) {
+        availabilityIndex.add(pending.row.username(), pending.row.email());
+        pending.result = new UserImportResult(pending.line, pending.username(), true, null);
+    }
+
+    // Attende il completamento del future, lasciando che l'eventuale errore venga gestito dopo
+    private static void awaitQuietly(CompletableFuture<String> future) {
+        try{
+            future.join();
+        }
+        catch (CompletionException ignored){
+            // Registrato come SERVER_ERROR sulla riga corrispondente
+        }
+    }
+
+    private static ImportRow parseCsv(String[] header, String line) {
+        String[] values = line.split(",", -1);
+        if(values.length != header.length){
+            throw new IllegalArgumentException("Numero di colonne non valido");
+        }
+        String email = null, username = null, psw = null, lang = null;
+        Boolean verified = null, theme = null;
+        for(int i = 0; i < header.length; i++){
+            String value = values[i].trim();
+            switch(header[i].trim().toLowerCase(Locale.ROOT)){
+                case "email" -> email = value;
+                case "username" -> username = value;
+                case "psw" -> psw = value;
+                case "verified" -> verified = Boolean.parseBoolean(value);
+                case "theme" -> theme = Boolean.parseBoolean(value);
+                case "lang" -> lang = value;
+                default -> { }
+            }
+        }
+        return new ImportRow(email, username, psw, verified, theme, lang);
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -2,18 +2,35 @@ package springboot.belzedev.it.services;
 
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springboot.belzedev.it.datasource.ReplicaRouting;
+import springboot.belzedev.it.dto.UserPage;
+import springboot.belzedev.it.dto.UserPreferences;
+import springboot.belzedev.it.dto.UserSummary;
 import springboot.belzedev.it.enums.ErrorsResponse;
 import springboot.belzedev.it.exceptions.EmailAlreadyExistsException;
 import springboot.belzedev.it.exceptions.InvalidEmailException;
+import springboot.belzedev.it.exceptions.InvalidLangException;
 import springboot.belzedev.it.exceptions.PasswordTooShortException;
 import springboot.belzedev.it.exceptions.UsernameAlreadyExistsException;
 import springboot.belzedev.it.models.User;
 import springboot.belzedev.it.repository.UserRepository;
+import springboot.belzedev.it.utils.EmailValidator;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Service per gestire la logica di business dell'entità {@link User}.
@@ -22,18 +39,78 @@ import java.util.Optional;
 @Service
 public class UserService {
 
+    // Codice di lingua: due o tre lettere, con un'eventuale regione o variante (es. "en", "it-IT")
+    private static final Pattern LANG = Pattern.compile("[A-Za-z]{2,3}(-[A-Za-z0-9]{2,8})?");
+
     @Autowired
     private UserRepository userRepository;
     @Autowired
-    private BCryptPasswordEncoder bCryptPasswordEncoder;
+    private PasswordHashingService passwordHashingService;
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor taskExecutor;
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private UserAvailabilityIndex availabilityIndex;
+    @Autowired
+    private TokenRevocationService revocationService;
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+    @Autowired
+    private UserVersionIndex versionIndex;
+
+    // Dimensione di pagina usata quando il chiamante non la specifica
+    @Value("${users.page.default-size:50}")
+    private int defaultPageSize;
+    // Dimensione di pagina massima accettata
+    @Value("${users.page.max-size:500}")
+    private int maxPageSize;
+
+    /**
+     * Restituisce una pagina di utenti successiva al cursore indicato (paginazione keyset su {@code id_user}).
+     * Viene letta una riga in più del necessario per sapere se esiste una pagina successiva.
+     *
+     * @param after ID dell'ultimo utente della pagina precedente, {@code null} per la prima pagina
+     * @param limit dimensione della pagina richiesta, {@code null} per quella di default; viene limitata a {@code users.page.max-size}
+     * @return la pagina di utenti con il cursore della pagina successiva
+     */
+    public UserPage getUsers(Long after, Integer limit){
+        int size = pageSize(limit);
+        List<UserSummary> rows = userRepository.findPageAfter(after == null ? 0L : after, PageRequest.ofSize(size + 1));
+        if(rows.size() > size){
+            List<UserSummary> items = rows.subList(0, size);
+            return new UserPage(items, items.get(size - 1).getId_user());
+        }
+        return new UserPage(rows, null);
+    }
 
     /**
-     * Restituisce la lista di tutti gli utenti presenti nel database.
+     * Restituisce la dimensione effettiva della pagina per il limite richiesto.
      *
-     * @return Lista di utenti
+     * @param limit dimensione della pagina richiesta, {@code null} per quella di default
+     * @return la dimensione di default se il limite manca o non è positivo, altrimenti il limite ridotto a {@code users.page.max-size}
      */
-    public List<User> getAllUsers(){
-        return userRepository.findAll();
+    public int pageSize(Integer limit){
+        return limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+    }
+
+    /**
+     * Scorre tutti gli utenti leggendoli da un cursore JDBC, passando ogni riga al consumer man mano che arriva.
+     * La lettura avviene in una transazione in sola lettura che resta aperta fino alla fine dello stream.
+     *
+     * @param consumer il consumer che riceve ogni utente
+     */
+    public void streamUsers(Consumer<UserSummary> consumer){
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            try(Stream<UserSummary> users = userRepository.streamAll()){
+                users.forEach(consumer);
+            }
+        });
     }
 
     /**
@@ -50,62 +127,122 @@ public class UserService {
     /**
      * Aggiunge un nuovo utente con validazioni.
      * Esegue controlli sull'email, username e password, e se validi, cripta la password e salva l'utente nel database.
+     * L'hashing della password avviene sull'executor dedicato; gli errori di validazione vengono restituiti tramite il future.
      *
      * @param user Utente da aggiungere
-     * @throws Exception Se si verificano errori durante la validazione
+     * @return un future completato quando l'utente è stato salvato
      */
-    public void addUser(@Valid User user) throws Exception {
-        if(!isValidEmail(user.getEmail())){
-            throw new InvalidEmailException(ErrorsResponse.INVALID_EMAIL.name());
+    public CompletableFuture<Void> addUser(@Valid User user) {
+        if(!EmailValidator.isValid(user.getEmail())){
+            return CompletableFuture.failedFuture(new InvalidEmailException(ErrorsResponse.INVALID_EMAIL.name()));
         }
-        else if(userRepository.existsByEmail(user.getEmail())){
-            throw new EmailAlreadyExistsException(ErrorsResponse.EXISTS_EMAIL.name());
+        else if(!availabilityIndex.isEmailAvailable(user.getEmail())){
+            return CompletableFuture.failedFuture(new EmailAlreadyExistsException(ErrorsResponse.EXISTS_EMAIL.name()));
         }
-        else if(userRepository.existsByUsername(user.getUsername())){
-            throw new UsernameAlreadyExistsException(ErrorsResponse.EXISTS_USERNAME.name());
+        else if(!availabilityIndex.isUsernameAvailable(user.getUsername())){
+            return CompletableFuture.failedFuture(new UsernameAlreadyExistsException(ErrorsResponse.EXISTS_USERNAME.name()));
         }
         else if(user.getPsw().length() < 8){
-            throw new PasswordTooShortException(ErrorsResponse.SHORT_PSW.name());
+            return CompletableFuture.failedFuture(new PasswordTooShortException(ErrorsResponse.SHORT_PSW.name()));
         }
-        // Cripta la password dell'utente
-        user.setPsw(bCryptPasswordEncoder.encode(user.getPsw()));
-        // Imposta la lingua e il tema di default
-        user.setLang("en");
-        user.setTheme(false);
-        // Salva l'utente nel database
-        userRepository.save(user);
+        // Cripta la password dell'utente sull'executor dedicato, poi salva sull'executor applicativo
+        return passwordHashingService.encode(user.getPsw())
+                .thenAcceptAsync(hash -> {
+                    user.setPsw(hash);
+                    // Imposta la lingua e il tema di default
+                    user.setLang("en");
+                    user.setTheme(false);
+                    // Salva l'utente nel database
+                    userRepository.save(user);
+                    availabilityIndex.add(user.getUsername(), user.getEmail());
+                    versionIndex.usersAdded();
+                }, taskExecutor);
     }
 
     /**
      * Aggiorna un utente esistente con un nuovo ID.
+     * L'utente viene letto dal primario e salvato con la versione appena letta: se nel frattempo è stato modificato
+     * da un'altra richiesta il salvataggio fallisce con {@link org.springframework.orm.ObjectOptimisticLockingFailureException}.
      *
      * @param user Utente da aggiornare
      * @param id ID dell'utente da aggiornare
      */
     public void updateUser(User user, Long id){
-        user.setId_user(id);
-        userRepository.save(user);
+        // Lettura e scrittura sul primario: una replica in ritardo darebbe una versione o una password superate
+        boolean passwordChanged = ReplicaRouting.onPrimary(() -> {
+            Optional<User> existing = userRepository.findById(id);
+            // Se la password cambia, i token emessi finora non devono più essere accettati
+            boolean changed = existing
+                    .map(value -> !Objects.equals(value.getPsw(), user.getPsw()))
+                    .orElse(false);
+            user.setId_user(id);
+            user.setVersion(existing.map(User::getVersion).orElse(0L));
+            userRepository.save(user);
+            return changed;
+        });
+        versionIndex.userChanged(id);
+        availabilityIndex.add(user.getUsername(), user.getEmail());
+        // Invalida il principal in cache, sia con il vecchio username che con quello nuovo
+        userDetailsService.evictUser(id);
+        userDetailsService.evict(user.getUsername());
+        if(passwordChanged){
+            revocationService.revokeAll(id);
+            refreshTokenService.revokeAll(id);
+        }
     }
 
     /**
-     * Cancella un utente in base all'ID, se esiste.
+     * Aggiorna soltanto le preferenze indicate con un'unica update, senza leggere l'utente né toccare gli altri campi;
+     * nella cache di secondo livello viene scartata solo la sua voce.
+     * Il database viene interrogato una seconda volta solo se l'aggiornamento non trova l'utente,
+     * per distinguere un utente inesistente da una versione non più attuale.
+     * Se non c'è nulla da modificare viene solo verificata l'esistenza dell'utente, senza cambiarne la versione.
      *
-     * @param id ID dell'utente da cancellare
+     * @param id ID dell'utente da aggiornare
+     * @param preferences le preferenze da modificare; i campi {@code null} restano invariati
+     * @param expectedVersion la versione attesa dell'utente, oppure {@code null} per aggiornare senza controllo
+     * @return {@code true} se l'utente esiste, {@code false} altrimenti
+     * @throws InvalidLangException se la lingua non è un codice valido
+     * @throws ObjectOptimisticLockingFailureException se la versione dell'utente è diversa da quella attesa
      */
-    public void deleteUser(Long id){
-        Optional<User> user = userRepository.findById(id);
-        user.ifPresent(value -> userRepository.delete(value));
+    public boolean updatePreferences(Long id, UserPreferences preferences, Long expectedVersion){
+        if(preferences.getLang() != null){
+            preferences.setLang(preferences.getLang().trim());
+            if(!LANG.matcher(preferences.getLang()).matches()){
+                throw new InvalidLangException(ErrorsResponse.INVALID_LANG.name());
+            }
+        }
+        if(!preferences.hasChanges()){
+            return ReplicaRouting.onPrimary(() -> userRepository.existsById(id));
+        }
+        if(userRepository.updatePreferences(id, preferences, expectedVersion) > 0){
+            versionIndex.userChanged(id);
+            return true;
+        }
+        if(expectedVersion != null && ReplicaRouting.onPrimary(() -> userRepository.existsById(id))){
+            throw new ObjectOptimisticLockingFailureException(User.class, id);
+        }
+        return false;
     }
 
     /**
-     * Valida un'email utilizzando una regex.
+     * Cancella un utente in base all'ID, se esiste. L'utente viene letto dal primario, così un utente appena creato
+     * e non ancora replicato viene comunque cancellato.
      *
-     * @param email L'email da validare
-     * @return {@code true} se l'email è valida, {@code false} altrimenti
+     * @param id ID dell'utente da cancellare
      */
-    private boolean isValidEmail(String email) {
-        // Regex per una validazione base dell'email
-        String emailRegex = "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$";
-        return email != null && email.matches(emailRegex);
+    public void deleteUser(Long id){
+        Optional<User> user = ReplicaRouting.onPrimary(() -> {
+            Optional<User> existing = userRepository.findById(id);
+            existing.ifPresent(userRepository::delete);
+            return existing;
+        });
+        user.ifPresent(value -> {
+            versionIndex.userChanged(id);
+            userDetailsService.evict(value.getUsername());
+            // I token dell'utente cancellato non devono più essere accettati
+            revocationService.revokeAll(id);
+            refreshTokenService.revokeAll(id);
+        });
     }
 }
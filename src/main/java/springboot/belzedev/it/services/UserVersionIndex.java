@@ -0,0 +1,164 @@
+package springboot.belzedev.it.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import springboot.belzedev.it.dto.UserPage;
+import springboot.belzedev.it.dto.UserSummary;
+import springboot.belzedev.it.models.User;
+import springboot.belzedev.it.utils.ExpiringCache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Indice in memoria delle versioni degli utenti, usato per rispondere alle GET condizionali ({@code If-None-Match})
+ * senza caricare né serializzare l'entità.
+ * L'ETag di un utente è derivato dalla colonna {@code version}; quello di una pagina dell'elenco dagli ID
+ * e dalle versioni degli utenti che contiene.
+ * Le scritture fatte da questa istanza invalidano subito le voci interessate; quelle fatte da altre istanze
+ * vengono notate alla scadenza della voce, quindi la durata delle voci limita per quanto tempo
+ * un client può ricevere 304 su una risorsa già modificata altrove.
+ */
+@Service
+public class UserVersionIndex {
+
+    // ETag noti per ID utente
+    private final ExpiringCache<Long, String> users;
+
+    // ETag noti per pagina dell'elenco, con chiave "after:size"
+    private final ExpiringCache<String, String> pages;
+
+    private final long userTtlMillis;
+    private final long pageTtlMillis;
+
+    /**
+     * @param maxSize il numero massimo di utenti e di pagine mantenuti in memoria
+     * @param userTtl la durata di validità dell'ETag di un utente
+     * @param pageTtl la durata di validità dell'ETag di una pagina dell'elenco
+     */
+    public UserVersionIndex(@Value("${users.etag.max-size:10000}") int maxSize,
+                            @Value("${users.etag.user-ttl:5s}") Duration userTtl,
+                            @Value("${users.etag.page-ttl:30s}") Duration pageTtl) {
+        this.users = new ExpiringCache<>(maxSize);
+        this.pages = new ExpiringCache<>(maxSize);
+        this.userTtlMillis = userTtl.toMillis();
+        this.pageTtlMillis = pageTtl.toMillis();
+    }
+
+    /**
+     * @param idUser l'ID dell'utente
+     * @return l'ETag noto dell'utente, oppure {@code null} se va letto dal database
+     */
+    public String getUserETag(Long idUser) {
+        return users.get(idUser);
+    }
+
+    /**
+     * Memorizza l'ETag dell'utente appena letto.
+     *
+     * @param user l'utente letto dal database
+     * @return l'ETag dell'utente
+     */
+    public String recordUser(User user) {
+        String etag = etag(user);
+        users.put(user.getId_user(), etag, System.currentTimeMillis() + userTtlMillis);
+        return etag;
+    }
+
+    /**
+     * @param after il cursore della pagina (0 per la prima)
+     * @param size la dimensione della pagina
+     * @return l'ETag noto della pagina, oppure {@code null} se va letta dal database
+     */
+    public String getPageETag(long after, int size) {
+        return pages.get(pageKey(after, size));
+    }
+
+    /**
+     * Memorizza l'ETag della pagina appena letta.
+     *
+     * @param after il cursore della pagina (0 per la prima)
+     * @param size la dimensione della pagina
+     * @param page la pagina letta dal database
+     * @return l'ETag della pagina
+     */
+    public String recordPage(long after, int size, UserPage page) {
+        String etag = etag(page);
+        pages.put(pageKey(after, size), etag, System.currentTimeMillis() + pageTtlMillis);
+        return etag;
+    }
+
+    /**
+     * Invalida l'ETag dell'utente modificato o cancellato, e quelli delle pagine che potrebbero contenerlo.
+     *
+     * @param idUser l'ID dell'utente
+     */
+    public void userChanged(Long idUser) {
+        users.invalidate(idUser);
+        pages.invalidateAll();
+    }
+
+    /**
+     * Invalida gli ETag delle pagine dopo l'inserimento di nuovi utenti.
+     */
+    public void usersAdded() {
+        pages.invalidateAll();
+    }
+
+    /**
+     * @param user l'utente
+     * @return l'ETag forte dell'utente, derivato da ID e versione
+     */
+    public static String etag(User user) {
+        return etag(user.getId_user(), user.getVersion());
+    }
+
+    /**
+     * @param idUser l'ID dell'utente
+     * @param version la versione dell'utente
+     * @return l'ETag forte dell'utente con la versione indicata
+     */
+    public static String etag(Long idUser, long version) {
+        return "\"" + idUser + "-" + version + "\"";
+    }
+
+    /**
+     * Estrae la versione da un ETag restituito per l'utente indicato, ad esempio dall'header {@code If-Match}.
+     * Gli ETag deboli ({@code W/...}) non vengono accettati, perché {@code If-Match} richiede il confronto forte.
+     *
+     * @param etag l'ETag ricevuto dal client
+     * @param idUser l'ID dell'utente a cui si riferisce la richiesta
+     * @return la versione, oppure {@code null} se l'ETag non è nel formato atteso o si riferisce a un altro utente
+     */
+    public static Long versionOf(String etag, Long idUser) {
+        String value = etag.trim();
+        String prefix = "\"" + idUser + "-";
+        if(!value.startsWith(prefix) || !value.endsWith("\"") || value.length() <= prefix.length() + 1){
+            return null;
+        }
+        try{
+            return Long.valueOf(value.substring(prefix.length(), value.length() - 1));
+        }
+        catch (NumberFormatException e){
+            return null;
+        }
+    }
+
+    /**
+     * @param page la pagina di utenti
+     * @return l'ETag forte della pagina, derivato da ID e versione di ogni utente e dal cursore successivo
+     */
+    public static String etag(UserPage page) {
+        StringBuilder stamp = new StringBuilder();
+        for(UserSummary user : page.getItems()){
+            stamp.append(user.getId_user()).append('-').append(user.getVersion()).append(',');
+        }
+        stamp.append(page.getNextCursor());
+        return "\"" + DigestUtils.md5DigestAsHex(stamp.toString().getBytes(StandardCharsets.US_ASCII)) + "\"";
+    }
+
+    private static String pageKey(long after, int size) {
+        return after + ":" + size;
+    }
+}
@@ -1,11 +1,14 @@
 package springboot.belzedev.it.services;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import springboot.belzedev.it.datasource.ReplicaRouting;
 import springboot.belzedev.it.models.User;
 import springboot.belzedev.it.models.VerificationToken;
 import springboot.belzedev.it.repository.UserRepository;
 import springboot.belzedev.it.repository.VerificationTokenRepository;
+import springboot.belzedev.it.security.VerificationLinkSigner;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -20,26 +23,80 @@ public class VerificationTokenService {
     @Autowired
     private VerificationTokenRepository tokenRepository;
 
-    public void createVerificationToken(User user){
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+
+    @Autowired
+    private UserVersionIndex versionIndex;
+
+    @Autowired
+    private VerificationTokenSweeper tokenSweeper;
+
+    @Autowired
+    private VerificationLinkSigner linkSigner;
+
+    // Modalità dei nuovi link: "token" (salvato nel database) oppure "stateless" (firmato, senza stato)
+    @Value("${verification.link.mode:token}")
+    private String linkMode;
+
+    /**
+     * Genera il token da inserire nel link di verifica dell'utente appena registrato.
+     * In modalità {@code stateless} il token è firmato e non viene salvato nulla nel database;
+     * altrimenti viene creato un {@link VerificationToken}.
+     *
+     * @param user l'utente appena registrato, con l'ID già assegnato
+     * @return il token da inserire nel link di verifica
+     */
+    public String issueVerificationToken(User user){
+        if("stateless".equalsIgnoreCase(linkMode)){
+            return linkSigner.sign(user.getId_user());
+        }
+        return createVerificationToken(user);
+    }
+
+    /**
+     * Crea e salva il token di verifica per l'utente indicato.
+     *
+     * @param user l'utente appena registrato
+     * @return il token generato, da inserire nel link di verifica
+     */
+    public String createVerificationToken(User user){
         String token = UUID.randomUUID().toString();
         VerificationToken verificationToken = new VerificationToken(token, user, LocalDateTime.now().plusHours(1));
         tokenRepository.save(verificationToken);
+        // Registra la scadenza, così il token verrà cancellato se non viene mai usato
+        tokenSweeper.track(verificationToken.getExpiryDate());
+        return token;
     }
 
-    public String getTokenForUser(User user) {
-        return tokenRepository.findByUser(user)
-                .map(VerificationToken::getToken)
-                .orElseThrow(() -> new RuntimeException("No token found for user"));
-    }
-
+    /**
+     * Verifica il token del link e, se valido, segna l'utente come verificato.
+     * I token firmati vengono controllati senza accedere al database, seguiti dal solo aggiornamento dell'utente;
+     * quelli salvati nel database restano accettati anche quando la modalità dei nuovi link è {@code stateless}.
+     *
+     * @param token il token ricevuto dal link
+     * @return {@code true} se l'utente è stato verificato
+     */
     public boolean validateVerificationToken(String token){
-        Optional<VerificationToken> optionalToken = tokenRepository.findByToken(token);
+        if(VerificationLinkSigner.isSigned(token)){
+            Long idUser = linkSigner.verify(token);
+            if(idUser != null && userRepository.markVerified(idUser) > 0){
+                userDetailsService.evictUser(idUser);
+                versionIndex.userChanged(idUser);
+                return true;
+            }
+            return false;
+        }
+        // Il token è stato appena scritto sul primario: una replica in ritardo potrebbe non averlo ancora
+        Optional<VerificationToken> optionalToken = ReplicaRouting.onPrimary(() -> tokenRepository.findByToken(token));
         if(optionalToken.isPresent()){
             VerificationToken verificationToken = optionalToken.get();
             if(verificationToken.getExpiryDate().isAfter(LocalDateTime.now())){
                 User user = verificationToken.getUser();
                 user.setVerified(true);
                 userRepository.save(user);
+                userDetailsService.evict(user.getUsername());
+                versionIndex.userChanged(user.getId_user());
                 tokenRepository.delete(verificationToken);
                 return true;
             }
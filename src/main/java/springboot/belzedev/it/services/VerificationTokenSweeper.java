@@ -0,0 +1,170 @@
+package springboot.belzedev.it.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import springboot.belzedev.it.repository.VerificationTokenRepository;
+import springboot.belzedev.it.utils.TimingWheel;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cancella periodicamente i token di verifica scaduti, che altrimenti resterebbero per sempre
+ * nella tabella {@code verification_tokens} per gli utenti che non confermano l'email.
+ * Una timing wheel in memoria conta le scadenze dei token creati da questa istanza, così il database
+ * viene interrogato solo quando nel tick appena trascorso è scaduto qualcosa; a intervalli più lunghi
+ * viene comunque eseguita una pulizia completa, per i token creati da altre istanze.
+ * La cancellazione avviene a lotti limitati sull'indice di {@code expiry_date}.
+ */
+@Service
+public class VerificationTokenSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(VerificationTokenSweeper.class);
+
+    private final VerificationTokenRepository tokenRepository;
+
+    private final TimingWheel wheel;
+
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final long fullSweepIntervalMillis;
+
+    // Istante (epoch millis) dell'ultima pulizia completa
+    private volatile long lastFullSweepMillis;
+
+    // true se l'ultima pulizia si è fermata al numero massimo di lotti lasciando token scaduti
+    private volatile boolean backlog;
+
+    // Ritardo, in secondi, tra la scadenza del token scaduto più vecchio e l'ultima pulizia
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    private final Counter purgedCounter;
+    private final Timer purgeTimer;
+
+    /**
+     * @param tokenRepository il repository dei token di verifica
+     * @param tickMillis la durata di un tick della timing wheel in millisecondi, che coincide con l'intervallo della pulizia
+     * @param slots il numero di tick coperti dalla timing wheel
+     * @param batchSize il numero massimo di token cancellati per query
+     * @param maxBatchesPerRun il numero massimo di lotti cancellati per esecuzione
+     * @param fullSweepInterval l'intervallo tra due pulizie complete, eseguite anche senza scadenze note
+     * @param registry il registro delle metriche
+     */
+    public VerificationTokenSweeper(VerificationTokenRepository tokenRepository,
+                                    @Value("${verification.sweeper.tick-ms:60000}") long tickMillis,
+                                    @Value("${verification.sweeper.slots:128}") int slots,
+                                    @Value("${verification.sweeper.batch-size:1000}") int batchSize,
+                                    @Value("${verification.sweeper.max-batches:20}") int maxBatchesPerRun,
+                                    @Value("${verification.sweeper.full-sweep-interval:1h}") Duration fullSweepInterval,
+                                    MeterRegistry registry) {
+        this.tokenRepository = tokenRepository;
+        this.wheel = new TimingWheel(tickMillis, slots, System.currentTimeMillis());
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.fullSweepIntervalMillis = fullSweepInterval.toMillis();
+        this.purgedCounter = Counter.builder("verification.tokens.purged")
+                .description("Token di verifica scaduti cancellati")
+                .register(registry);
+        this.purgeTimer = Timer.builder("verification.tokens.purge")
+                .description("Durata di una pulizia dei token scaduti")
+                .register(registry);
+        Gauge.builder("verification.tokens.purge.lag", lagSeconds, AtomicLong::get)
+                .description("Secondi trascorsi dalla scadenza del token scaduto più vecchio ancora presente")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("verification.tokens.pending", wheel, TimingWheel::pending)
+                .description("Scadenze in attesa nella timing wheel")
+                .register(registry);
+    }
+
+    /**
+     * Registra la scadenza di un token appena creato.
+     *
+     * @param expiryDate la scadenza del token
+     */
+    public void track(LocalDateTime expiryDate) {
+        wheel.schedule(toMillis(expiryDate));
+    }
+
+    /**
+     * All'avvio popola la timing wheel con i token ancora validi;
+     * quelli già scaduti vengono cancellati dalla prima pulizia completa.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try{
+            tokenRepository.findPendingExpiries(LocalDateTime.now()).forEach(this::track);
+        }
+        catch (DataAccessException e){
+            log.warn("Inizializzazione della pulizia dei token fallita: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Fa avanzare la timing wheel e, se nel frattempo sono scaduti dei token, se la pulizia precedente
+     * non li ha esauriti o se è il momento della pulizia completa, cancella i token scaduti.
+     */
+    @Scheduled(fixedDelayString = "${verification.sweeper.tick-ms:60000}")
+    public void sweep() {
+        long nowMillis = System.currentTimeMillis();
+        long due = wheel.advance(nowMillis);
+        try{
+            // La prima esecuzione è sempre una pulizia completa
+            if(nowMillis - lastFullSweepMillis >= fullSweepIntervalMillis){
+                lastFullSweepMillis = nowMillis;
+                purge();
+            }
+            else if(due > 0 || backlog){
+                purge();
+            }
+        }
+        catch (DataAccessException e){
+            log.warn("Pulizia dei token scaduti fallita, nuovo tentativo al prossimo ciclo: {}", e.getMessage());
+        }
+    }
+
+    // Cancella i token scaduti a lotti, fino a esaurirli o al numero massimo di lotti per esecuzione
+    private void purge() {
+        purgeTimer.record(() -> {
+            LocalDateTime now = LocalDateTime.now();
+            long purged = 0;
+            int deleted;
+            int batches = 0;
+            do{
+                deleted = tokenRepository.deleteExpired(now, batchSize);
+                purged += deleted;
+                batches++;
+            }
+            while(deleted == batchSize && batches < maxBatchesPerRun);
+            backlog = deleted == batchSize;
+            purgedCounter.increment(purged);
+            updateLag(now);
+            if(purged > 0){
+                log.debug("Cancellati {} token di verifica scaduti", purged);
+            }
+        });
+    }
+
+    // Il ritardo è zero se non restano token scaduti
+    private void updateLag(LocalDateTime now) {
+        LocalDateTime oldest = tokenRepository.findOldestExpiry();
+        long lag = oldest != null && oldest.isBefore(now) ? Duration.between(oldest, now).toSeconds() : 0;
+        lagSeconds.set(lag);
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
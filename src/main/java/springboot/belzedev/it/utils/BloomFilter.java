@@ -0,0 +1,112 @@
+package springboot.belzedev.it.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro di Bloom su stringhe, sicuro per l'uso concorrente senza lock.
+ * Una risposta negativa di {@link #mightContain(String)} è certa; una positiva può essere un falso positivo,
+ * con probabilità vicina a quella scelta finché il numero di elementi non supera quello previsto.
+ * Gli elementi non possono essere rimossi: per eliminarli occorre ricostruire il filtro.
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray words;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.words = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+        this.bitCount = (long) words.length() << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Crea un filtro dimensionato per il numero di elementi e la probabilità di falsi positivi indicati.
+     *
+     * @param expectedInsertions numero di elementi previsto
+     * @param falsePositiveRate probabilità di falso positivo desiderata, compresa tra 0 e 1 esclusi
+     * @return il filtro vuoto
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if(expectedInsertions <= 0){
+            throw new IllegalArgumentException("expectedInsertions deve essere positivo");
+        }
+        if(falsePositiveRate <= 0 || falsePositiveRate >= 1){
+            throw new IllegalArgumentException("falsePositiveRate deve essere compreso tra 0 e 1");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bits = Math.min(Math.max(bits, 64), (long) Integer.MAX_VALUE << 6);
+        int hashes = (int) Math.max(1, Math.round((double) bits / expectedInsertions * Math.log(2)));
+        return new BloomFilter(bits, hashes);
+    }
+
+    /**
+     * Aggiunge un elemento al filtro.
+     *
+     * @param value l'elemento da aggiungere
+     */
+    public void put(String value) {
+        long hash = hash(value);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for(int i = 0; i < hashCount; i++){
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)){
+                current = words.get(word);
+            }
+        }
+    }
+
+    /**
+     * Indica se l'elemento potrebbe essere contenuto nel filtro.
+     *
+     * @param value l'elemento da cercare
+     * @return {@code false} se l'elemento non è sicuramente presente, {@code true} se potrebbe esserlo
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for(int i = 0; i < hashCount; i++){
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    // FNV-1a a 64 bit sui byte UTF-8 dell'elemento
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for(byte b : value.getBytes(StandardCharsets.UTF_8)){
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    // Finalizzatore di MurmurHash3, per distribuire uniformemente i bit dell'hash
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
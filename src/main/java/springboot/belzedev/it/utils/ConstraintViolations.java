@@ -0,0 +1,43 @@
+package springboot.belzedev.it.utils;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import springboot.belzedev.it.enums.ErrorsResponse;
+import springboot.belzedev.it.models.User;
+
+/**
+ * Metodi di supporto per interpretare le violazioni dei vincoli del database.
+ */
+public final class ConstraintViolations {
+
+    private ConstraintViolations() {}
+
+    /**
+     * Individua quale vincolo univoco della tabella {@code users} è stato violato.
+     *
+     * @param e la violazione ricevuta dal database
+     * @return {@link ErrorsResponse#EXISTS_EMAIL} o {@link ErrorsResponse#EXISTS_USERNAME},
+     *         oppure {@code null} se la violazione non riguarda né l'email né lo username
+     */
+    public static ErrorsResponse duplicateUserError(DataIntegrityViolationException e) {
+        String constraint = violatedConstraint(e);
+        if(constraint.contains(User.EMAIL_CONSTRAINT)){
+            return ErrorsResponse.EXISTS_EMAIL;
+        }
+        if(constraint.contains(User.USERNAME_CONSTRAINT)){
+            return ErrorsResponse.EXISTS_USERNAME;
+        }
+        return null;
+    }
+
+    // Nome del vincolo violato, preso da Hibernate quando disponibile, altrimenti dal messaggio del driver
+    private static String violatedConstraint(DataIntegrityViolationException e) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()){
+            if(cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null){
+                return violation.getConstraintName();
+            }
+        }
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null ? message : "";
+    }
+}
@@ -0,0 +1,66 @@
+package springboot.belzedev.it.utils;
+
+/**
+ * Validazione di base degli indirizzi email, condivisa da registrazione, gestione utenti e import massivo.
+ * Equivale alla regex {@code ^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\.[a-zA-Z]{2,}$}, ma scorre la stringa
+ * una sola volta senza allocare oggetti, così da poter essere usata su grandi volumi.
+ */
+public final class EmailValidator {
+
+    private EmailValidator() {}
+
+    /**
+     * Valida un'email con le stesse regole della regex di base.
+     *
+     * @param email L'email da validare
+     * @return {@code true} se l'email è valida, {@code false} altrimenti
+     */
+    public static boolean isValid(String email) {
+        if(email == null){
+            return false;
+        }
+        int length = email.length();
+        int at = 0;
+        // Parte locale: almeno un carattere tra lettere, cifre e ._%+-
+        while(at < length && isLocalChar(email.charAt(at))){
+            at++;
+        }
+        if(at == 0 || at == length || email.charAt(at) != '@'){
+            return false;
+        }
+        // Dominio: solo lettere, cifre, punti e trattini, ricordando l'ultimo punto
+        int lastDot = -1;
+        for(int i = at + 1; i < length; i++){
+            char c = email.charAt(i);
+            if(c == '.'){
+                lastDot = i;
+            }
+            else if(!isLetterOrDigit(c) && c != '-'){
+                return false;
+            }
+        }
+        // Serve almeno un carattere prima dell'ultimo punto e almeno due lettere dopo
+        if(lastDot <= at + 1 || length - lastDot - 1 < 2){
+            return false;
+        }
+        for(int i = lastDot + 1; i < length; i++){
+            if(!isLetter(email.charAt(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLocalChar(char c) {
+        return isLetterOrDigit(c) || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+
+    private static boolean isLetterOrDigit(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    // Solo lettere ASCII, come le classi [a-zA-Z] della regex
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,135 @@
+package springboot.belzedev.it.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Cache in memoria, limitata in dimensione, in cui ogni voce ha una propria scadenza assoluta.
+ * Si appoggia a Caffeine: le voci scadute vengono rimosse dalla ruota temporale interna e il limite
+ * di dimensione viene fatto rispettare scartando le voci meno utili (W-TinyLFU), con un costo costante
+ * per scrittura anche a cache piena.
+ * Tiene traccia di hit, miss ed eviction per poter dimensionare la cache.
+ *
+ * @param <K> tipo della chiave
+ * @param <V> tipo del valore
+ */
+public class ExpiringCache<K, V> {
+
+    // Voce della cache: il valore e l'istante (epoch millis) oltre il quale non è più valido
+    private record Entry<V>(V value, long expiresAtMillis) {}
+
+    // Durata residua della voce, ricalcolata a ogni inserimento o sostituzione
+    private static final class EntryExpiry<K, V> implements Expiry<K, Entry<V>> {
+        @Override
+        public long expireAfterCreate(K key, Entry<V> entry, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.expiresAtMillis() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, Entry<V> entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(K key, Entry<V> entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private final Cache<K, Entry<V>> entries;
+
+    private final int maxSize;
+
+    /**
+     * @param maxSize numero massimo di voci mantenute in memoria
+     */
+    public ExpiringCache(int maxSize) {
+        if(maxSize <= 0){
+            throw new IllegalArgumentException("maxSize deve essere positivo");
+        }
+        this.maxSize = maxSize;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new EntryExpiry<K, V>())
+                // La manutenzione (eviction e scadenze) gira sul thread che scrive, non sul ForkJoinPool comune
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Restituisce il valore associato alla chiave se presente e non scaduto.
+     *
+     * @param key la chiave da cercare
+     * @return il valore, oppure {@code null} se assente o scaduto
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.getIfPresent(key);
+        return entry != null ? entry.value() : null;
+    }
+
+    /**
+     * Inserisce o sostituisce un valore con la scadenza indicata.
+     * Le voci già scadute non vengono memorizzate.
+     *
+     * @param key la chiave
+     * @param value il valore
+     * @param expiresAtMillis istante di scadenza in epoch millis
+     */
+    public void put(K key, V value, long expiresAtMillis) {
+        if(expiresAtMillis <= System.currentTimeMillis()){
+            return;
+        }
+        entries.put(key, new Entry<>(value, expiresAtMillis));
+    }
+
+    /**
+     * Rimuove la voce associata alla chiave.
+     *
+     * @param key la chiave da invalidare
+     */
+    public void invalidate(K key) {
+        entries.invalidate(key);
+    }
+
+    /**
+     * Rimuove tutte le voci il cui valore soddisfa il predicato.
+     * Da usare solo su percorsi poco frequenti (es. scritture), perché scorre l'intera cache.
+     *
+     * @param predicate condizione sui valori da rimuovere
+     */
+    public void invalidateIf(Predicate<V> predicate) {
+        entries.asMap().values().removeIf(entry -> predicate.test(entry.value()));
+    }
+
+    /**
+     * Svuota completamente la cache.
+     */
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public int size() {
+        return (int) entries.estimatedSize();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return entries.stats().hitCount();
+    }
+
+    public long getMisses() {
+        return entries.stats().missCount();
+    }
+
+    public long getEvictions() {
+        return entries.stats().evictionCount();
+    }
+}
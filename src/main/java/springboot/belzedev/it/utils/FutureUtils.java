@@ -0,0 +1,27 @@
+package springboot.belzedev.it.utils;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Metodi di supporto per la gestione dei {@link java.util.concurrent.CompletableFuture}.
+ */
+public final class FutureUtils {
+
+    private FutureUtils() {}
+
+    /**
+     * Restituisce la causa originale di un errore prodotto da un future,
+     * rimuovendo gli involucri {@link CompletionException} ed {@link ExecutionException}.
+     *
+     * @param throwable l'errore ricevuto dal future
+     * @return la causa originale
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable current = throwable;
+        while((current instanceof CompletionException || current instanceof ExecutionException) && current.getCause() != null){
+            current = current.getCause();
+        }
+        return current;
+    }
+}
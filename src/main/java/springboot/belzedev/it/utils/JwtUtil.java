@@ -1,20 +1,65 @@
 package springboot.belzedev.it.utils;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.SignatureException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import springboot.belzedev.it.security.JwtKeyring;
 
 import javax.crypto.SecretKey;
+import java.security.Key;
+import java.time.Duration;
 import java.util.Date;
+import java.util.UUID;
 
 
 @Component
 public class JwtUtil {
 
-    // Chiave segreta generata dinamicamente per firmare i token JWT utilizzando l'algoritmo HS256
-    private final SecretKey SECRET_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    // Claim con la data di emissione al millisecondo
+    private static final String ISSUED_AT_MILLIS = "iatMs";
+
+    // Portachiavi condiviso: la chiave corrente firma, tutte quelle ancora valide verificano
+    private final JwtKeyring keyring;
+
+    // Parser costruito una sola volta e riutilizzato: JwtParser è immutabile e thread-safe.
+    // La chiave di verifica viene scelta in base al kid nell'header del token
+    private final JwtParser parser;
+
+    // Cache dei token già verificati: le richieste successive con lo stesso token evitano la verifica della firma
+    private final ExpiringCache<String, Claims> verifiedTokens;
+
+    // Durata di validità dei token emessi
+    private final long ttlMillis;
+
+    /**
+     * @param verifiedCacheSize numero massimo di token verificati mantenuti in cache
+     * @param ttl durata di validità dei token emessi
+     * @param keyring il portachiavi con le chiavi di firma
+     */
+    public JwtUtil(@Value("${jwt.verified-cache.max-size:10000}") int verifiedCacheSize,
+                   @Value("${jwt.ttl:15m}") Duration ttl,
+                   JwtKeyring keyring) {
+        this.verifiedTokens = new ExpiringCache<>(verifiedCacheSize);
+        this.ttlMillis = ttl.toMillis();
+        this.keyring = keyring;
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        SecretKey key = keyring.find(header.getKeyId());
+                        if(key == null){
+                            throw new SignatureException("Chiave di firma sconosciuta o ritirata: " + header.getKeyId());
+                        }
+                        return key;
+                    }
+                })
+                .build();
+    }
 
     /**
      * Metodo per generare un token JWT.
@@ -27,18 +72,47 @@ public class JwtUtil {
         // Creazione del token JWT con:
         // - subject (nome utente)
         // - claim personalizzato (ID utente)
-        // - data di emissione
-        // - data di scadenza (10 ore dall'ora corrente)
-        // - firma con la chiave segreta
+        // - identificativo univoco (jti), usato per revocare il singolo token
+        // - data di emissione, anche al millisecondo (il claim "iat" ha la precisione del secondo)
+        // - data di scadenza (jwt.ttl dall'ora corrente)
+        // - firma con la chiave corrente del portachiavi
+        long now = System.currentTimeMillis();
+        JwtKeyring.SigningKey signingKey = keyring.current();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signingKey.kid())  // Indica la chiave con cui verificare il token
                 .setSubject(username)  // Imposta il subject come nome utente
                 .claim("idUser", idUser)  // Aggiunge il claim "idUser" con l'ID dell'utente
-                .setIssuedAt(new Date())  // Imposta la data di emissione
-                .setExpiration(new Date(System.currentTimeMillis() + 10 * 3600 * 1000))  // Imposta la scadenza a 10 ore
-                .signWith(SECRET_KEY)  // Firma il token con la chiave segreta
+                .setId(UUID.randomUUID().toString())  // Imposta l'identificativo del token
+                .setIssuedAt(new Date(now))  // Imposta la data di emissione
+                .claim(ISSUED_AT_MILLIS, now)  // Data di emissione al millisecondo, confrontata con le revoche per utente
+                .setExpiration(new Date(now + ttlMillis))  // Imposta la scadenza
+                .signWith(signingKey.key())  // Firma il token con la chiave corrente
                 .compact();  // Compattta tutto in una stringa JWT
     }
 
+    /**
+     * Verifica il token una sola volta e ne restituisce i claims.
+     * Se il token è già stato verificato e non è ancora scaduto, i claims vengono presi dalla cache
+     * senza ripetere la verifica della firma HMAC.
+     *
+     * @param token Il token da verificare.
+     * @return I claims del token verificato.
+     * @throws io.jsonwebtoken.ExpiredJwtException se il token è scaduto.
+     * @throws io.jsonwebtoken.JwtException se il token non è valido o la firma non corrisponde.
+     */
+    public Claims verifyToken(String token){
+        Claims cached = verifiedTokens.get(token);
+        if(cached != null){
+            return cached;
+        }
+        Claims claims = extractAllClaims(token);
+        // Memorizza i claims fino alla scadenza naturale del token
+        if(claims.getExpiration() != null){
+            verifiedTokens.put(token, claims, claims.getExpiration().getTime());
+        }
+        return claims;
+    }
+
     /**
      * Metodo privato per estrarre tutte le informazioni (claims) dal token JWT.
      *
@@ -46,10 +120,8 @@ public class JwtUtil {
      * @return Un oggetto Claims che contiene tutte le informazioni del token.
      */
     private Claims extractAllClaims(String token){
-        // Estrae i claims (dati) dal token JWT usando la chiave segreta per decodificarlo
-        return Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)  // Imposta la chiave segreta per la verifica del token
-                .build()
+        // Estrae i claims (dati) dal token JWT usando il parser condiviso
+        return parser
                 .parseClaimsJws(token)  // Decodifica il token
                 .getBody();  // Ottiene il corpo (claims) del token
     }
@@ -62,7 +134,7 @@ public class JwtUtil {
      */
     public String extractUsername(String token){
         // Estrae il subject, che rappresenta il nome utente
-        return extractAllClaims(token).getSubject();
+        return verifyToken(token).getSubject();
     }
 
     /**
@@ -72,7 +144,7 @@ public class JwtUtil {
      * @return L'ID utente contenuto nel claim "idUser" del token.
      */
     public Long extractIdUser(String token){
-        Claims claims = extractAllClaims(token);
+        Claims claims = verifyToken(token);
         // Estrae il claim "idUser" come Long
         return claims.get("idUser", Long.class);
     }
@@ -84,7 +156,7 @@ public class JwtUtil {
      * @return true se il token è scaduto, false altrimenti.
      */
     public boolean isTokenExpired(String token){
-        Claims claims = extractAllClaims(token);
+        Claims claims = verifyToken(token);
         // Verifica se la data di scadenza è prima della data corrente
         return claims.getExpiration().before(new Date());
     }
@@ -98,17 +170,39 @@ public class JwtUtil {
      */
     public boolean validateToken(String token, String username){
         // Controlla se il nome utente nel token corrisponde a quello fornito e se il token non è scaduto
-        return username.equals(extractUsername(token)) && !isTokenExpired(token);
+        Claims claims = verifyToken(token);
+        return username.equals(claims.getSubject()) && !claims.getExpiration().before(new Date());
+    }
+
+    /**
+     * Restituisce la data di emissione del token al millisecondo.
+     * Per i token emessi prima dell'introduzione del claim {@code iatMs} usa l'inizio del secondo di {@code iat}:
+     * il confronto con una revoca avvenuta nello stesso secondo considera quindi il token revocato.
+     *
+     * @param claims i claims del token verificato
+     * @return la data di emissione (epoch millis)
+     */
+    public static long issuedAtMillis(Claims claims) {
+        Long millis = claims.get(ISSUED_AT_MILLIS, Long.class);
+        return millis != null ? millis : claims.getIssuedAt().getTime();
+    }
+
+    /**
+     * Restituisce la durata di validità dei token emessi.
+     *
+     * @return la durata di validità
+     */
+    public Duration getTokenTtl() {
+        return Duration.ofMillis(ttlMillis);
     }
 
     /**
-     * Metodo privato per ottenere la chiave di firma.
-     * Potrebbe essere utile se in futuro si vuole esporre la chiave in qualche contesto.
+     * Restituisce la cache dei token verificati, per esporne le statistiche.
      *
-     * @return La chiave segreta utilizzata per firmare i token JWT.
+     * @return la cache dei token verificati
      */
-    private SecretKey getSigningKey() {
-        return SECRET_KEY;
+    public ExpiringCache<String, Claims> getVerifiedTokenCache() {
+        return verifiedTokens;
     }
 
 }
@@ -0,0 +1,146 @@
+package springboot.belzedev.it.utils;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limitatore a token bucket per chiave, in memoria e senza lock.
+ * Ogni bucket è rappresentato da un solo {@link AtomicLong} con l'istante teorico di arrivo
+ * della prossima richiesta (algoritmo GCRA, equivalente a un token bucket): l'acquisizione
+ * di un token è una singola compare-and-set, quindi resta economica anche sotto contesa.
+ * Un bucket tornato pieno equivale a un bucket nuovo e viene eliminato da {@link #evictIdle()};
+ * il numero di chiavi è comunque limitato a {@code maxKeys}. Con il limite raggiunto vengono eliminati
+ * solo i bucket tornati pieni: se non ce ne sono, le nuove chiavi vengono rifiutate (fail closed),
+ * così riempire la mappa di chiavi casuali non azzera i bucket ancora attivi.
+ *
+ * @param <K> tipo della chiave
+ */
+public class RateLimiter<K> {
+
+    // Intervallo minimo tra due scansioni per fare spazio, che costano O(maxKeys)
+    private static final long SWEEP_SPACING_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConcurrentHashMap<K, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    // Istante da cui una nuova scansione può liberare spazio; Long.MAX_VALUE mentre una scansione è in corso
+    private final AtomicLong nextSweep = new AtomicLong(Long.MIN_VALUE);
+
+    // Intervallo tra due token, in nanosecondi
+    private final long emissionIntervalNanos;
+
+    // Anticipo massimo ammesso rispetto al ritmo di emissione, cioè la dimensione del burst
+    private final long burstToleranceNanos;
+
+    private final int maxKeys;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * @param capacity numero massimo di richieste consecutive ammesse con il bucket pieno
+     * @param refillPeriod tempo necessario per riempire completamente il bucket vuoto
+     * @param maxKeys numero massimo di chiavi tenute in memoria
+     */
+    public RateLimiter(int capacity, Duration refillPeriod, int maxKeys) {
+        this(capacity, refillPeriod, maxKeys, System::nanoTime);
+    }
+
+    RateLimiter(int capacity, Duration refillPeriod, int maxKeys, LongSupplier nanoClock) {
+        if(capacity <= 0 || maxKeys <= 0){
+            throw new IllegalArgumentException("capacity e maxKeys devono essere positivi");
+        }
+        if(refillPeriod.isZero() || refillPeriod.isNegative()){
+            throw new IllegalArgumentException("refillPeriod deve essere positivo");
+        }
+        this.emissionIntervalNanos = Math.max(1, refillPeriod.toNanos() / capacity);
+        this.burstToleranceNanos = emissionIntervalNanos * (capacity - 1);
+        this.maxKeys = maxKeys;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Tenta di consumare un token dal bucket della chiave indicata.
+     *
+     * @param key la chiave
+     * @return 0 se il token è stato concesso, altrimenti i nanosecondi da attendere prima del prossimo token
+     *         (anche quando la chiave è nuova e non c'è spazio per il suo bucket)
+     */
+    public long tryAcquire(K key) {
+        long now = nanoClock.getAsLong();
+        AtomicLong bucket = buckets.get(key);
+        if(bucket == null){
+            if(buckets.size() >= maxKeys && !makeRoom(now)){
+                long next = nextSweep.get();
+                return next == Long.MAX_VALUE ? emissionIntervalNanos : Math.max(1, next - now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while(true){
+            long tat = bucket.get();
+            long base = Math.max(tat, now);
+            long wait = base - now - burstToleranceNanos;
+            if(wait > 0){
+                return wait;
+            }
+            if(bucket.compareAndSet(tat, base + emissionIntervalNanos)){
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Riporta il bucket della chiave indicata allo stato iniziale.
+     *
+     * @param key la chiave
+     */
+    public void reset(K key) {
+        buckets.remove(key);
+    }
+
+    /**
+     * Elimina i bucket tornati pieni, che non servono più a limitare nulla.
+     *
+     * @return il numero di bucket eliminati
+     */
+    public int evictIdle() {
+        long now = nanoClock.getAsLong();
+        int removed = 0;
+        Iterator<AtomicLong> iterator = buckets.values().iterator();
+        while(iterator.hasNext()){
+            if(iterator.next().get() <= now){
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // Libera spazio eliminando i bucket tornati pieni, al più una volta per SWEEP_SPACING_NANOS e solo se
+    // qualche bucket può essere tornato pieno dall'ultima scansione; restituisce true se c'è spazio per una nuova chiave
+    private boolean makeRoom(long now) {
+        long next = nextSweep.get();
+        if(now < next || !nextSweep.compareAndSet(next, Long.MAX_VALUE)){
+            return buckets.size() < maxKeys;
+        }
+        long earliestRefill = Long.MAX_VALUE;
+        Iterator<AtomicLong> iterator = buckets.values().iterator();
+        while(iterator.hasNext()){
+            long tat = iterator.next().get();
+            if(tat <= now){
+                iterator.remove();
+            }
+            else{
+                earliestRefill = Math.min(earliestRefill, tat);
+            }
+        }
+        nextSweep.set(Math.max(now + SWEEP_SPACING_NANOS, earliestRefill == Long.MAX_VALUE ? now : earliestRefill));
+        return buckets.size() < maxKeys;
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,134 @@
+package springboot.belzedev.it.utils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Insieme in memoria dei token revocati, consultabile in tempo costante.
+ * I token revocati singolarmente (per {@code jti}) sono raggruppati in bucket per istante di scadenza:
+ * la ricerca guarda solo il bucket della scadenza del token, e un bucket viene scartato per intero
+ * quando tutti i suoi token sono scaduti naturalmente. La memoria resta quindi proporzionale
+ * ai soli token revocati ancora validi.
+ * Le revoche per utente invalidano tutti i token dell'utente emessi fino a un certo istante
+ * (es. dopo un cambio password o la cancellazione dell'account) e durano quanto un token.
+ */
+public class RevocationList {
+
+    // Revoca di tutti i token di un utente emessi fino a revokedAtMillis compreso
+    private record UserRevocation(long revokedAtMillis, long expiresAtMillis) {}
+
+    private final long bucketMillis;
+
+    // Indice del bucket (scadenza / bucketMillis) -> jti revocati che scadono in quell'intervallo
+    private final ConcurrentHashMap<Long, Set<String>> tokenBuckets = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Long, UserRevocation> userRevocations = new ConcurrentHashMap<>();
+
+    /**
+     * @param bucketMillis l'ampiezza di un bucket di scadenza in millisecondi
+     */
+    public RevocationList(long bucketMillis) {
+        if(bucketMillis <= 0){
+            throw new IllegalArgumentException("bucketMillis deve essere positivo");
+        }
+        this.bucketMillis = bucketMillis;
+    }
+
+    /**
+     * Revoca un singolo token. I token già scaduti vengono ignorati.
+     *
+     * @param jti l'identificativo del token
+     * @param expiresAtMillis la scadenza del token (epoch millis)
+     * @param nowMillis l'istante corrente (epoch millis)
+     */
+    public void revokeToken(String jti, long expiresAtMillis, long nowMillis) {
+        // Un bucket viene scartato solo quando la sua fine è passata, quindi non può sparire
+        // mentre vi si aggiunge un token non ancora scaduto
+        if(expiresAtMillis <= nowMillis){
+            return;
+        }
+        tokenBuckets.computeIfAbsent(bucket(expiresAtMillis), b -> ConcurrentHashMap.newKeySet()).add(jti);
+    }
+
+    /**
+     * Indica se il token è stato revocato singolarmente.
+     *
+     * @param jti l'identificativo del token
+     * @param expiresAtMillis la scadenza del token (epoch millis), che individua il bucket
+     * @return {@code true} se il token è revocato
+     */
+    public boolean isTokenRevoked(String jti, long expiresAtMillis) {
+        Set<String> revoked = tokenBuckets.get(bucket(expiresAtMillis));
+        return revoked != null && revoked.contains(jti);
+    }
+
+    /**
+     * Revoca tutti i token dell'utente emessi fino all'istante indicato, compreso.
+     *
+     * @param idUser l'ID dell'utente
+     * @param revokedAtMillis l'istante della revoca (epoch millis)
+     * @param expiresAtMillis l'istante dopo il quale tutti i token interessati sono comunque scaduti
+     */
+    public void revokeUser(long idUser, long revokedAtMillis, long expiresAtMillis) {
+        userRevocations.merge(idUser, new UserRevocation(revokedAtMillis, expiresAtMillis),
+                (current, update) -> current.revokedAtMillis() >= update.revokedAtMillis() ? current : update);
+    }
+
+    /**
+     * Indica se i token dell'utente emessi nell'istante indicato sono stati revocati.
+     * Un token emesso nello stesso millisecondo della revoca è considerato revocato.
+     *
+     * @param idUser l'ID dell'utente
+     * @param issuedAtMillis la data di emissione del token (epoch millis)
+     * @return {@code true} se il token è revocato
+     */
+    public boolean isUserRevoked(long idUser, long issuedAtMillis) {
+        UserRevocation revocation = userRevocations.get(idUser);
+        return revocation != null && issuedAtMillis <= revocation.revokedAtMillis();
+    }
+
+    /**
+     * Scarta i bucket i cui token sono tutti scaduti e le revoche per utente non più necessarie.
+     *
+     * @param nowMillis l'istante corrente (epoch millis)
+     */
+    public void purge(long nowMillis) {
+        tokenBuckets.keySet().removeIf(b -> (b + 1) * bucketMillis <= nowMillis);
+        userRevocations.values().removeIf(revocation -> revocation.expiresAtMillis() <= nowMillis);
+    }
+
+    /**
+     * Restituisce il numero di token revocati singolarmente ancora in memoria.
+     *
+     * @return il numero di token revocati
+     */
+    public long tokenCount() {
+        long count = 0;
+        for(Set<String> revoked : tokenBuckets.values()){
+            count += revoked.size();
+        }
+        return count;
+    }
+
+    /**
+     * Restituisce il numero di bucket di scadenza in memoria.
+     *
+     * @return il numero di bucket
+     */
+    public int bucketCount() {
+        return tokenBuckets.size();
+    }
+
+    /**
+     * Restituisce il numero di utenti con una revoca attiva.
+     *
+     * @return il numero di utenti
+     */
+    public int userCount() {
+        return userRevocations.size();
+    }
+
+    private long bucket(long expiresAtMillis) {
+        return Math.floorDiv(expiresAtMillis, bucketMillis);
+    }
+}
@@ -0,0 +1,119 @@
+package springboot.belzedev.it.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timing wheel che conta le scadenze future raggruppate per tick.
+ * Non memorizza gli elementi ma solo quanti ne scadono in ogni tick: serve a sapere, senza interrogare
+ * il database, se nell'intervallo appena trascorso è scaduto qualcosa.
+ * Le scadenze oltre l'orizzonte della ruota ({@code slots * tickMillis}) vengono tenute a parte
+ * e spostate nella ruota quando vi rientrano.
+ * Il conteggio è indicativo: in caso di corsa con {@link #advance(long)} una scadenza può essere
+ * riportata al giro successivo, mai persa.
+ */
+public class TimingWheel {
+
+    private final long tickMillis;
+
+    private final AtomicLongArray slots;
+
+    // Scadenze oltre l'orizzonte della ruota, per tick assoluto
+    private final ConcurrentSkipListMap<Long, AtomicLong> overflow = new ConcurrentSkipListMap<>();
+
+    // Scadenze registrate per un tick già trascorso, da restituire al prossimo avanzamento
+    private final AtomicLong overdue = new AtomicLong();
+
+    // Ultimo tick assoluto già elaborato
+    private volatile long currentTick;
+
+    /**
+     * @param tickMillis durata di un tick in millisecondi
+     * @param slotCount numero di tick coperti dalla ruota
+     * @param nowMillis istante iniziale in epoch millis
+     */
+    public TimingWheel(long tickMillis, int slotCount, long nowMillis) {
+        if(tickMillis <= 0 || slotCount <= 0){
+            throw new IllegalArgumentException("tickMillis e slotCount devono essere positivi");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new AtomicLongArray(slotCount);
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Registra una scadenza.
+     *
+     * @param expiresAtMillis l'istante di scadenza in epoch millis
+     */
+    public void schedule(long expiresAtMillis) {
+        // Arrotonda per eccesso: l'elemento risulta scaduto solo a tick concluso
+        long tick = Math.floorDiv(expiresAtMillis + tickMillis - 1, tickMillis);
+        long current = currentTick;
+        if(tick <= current){
+            overdue.incrementAndGet();
+        }
+        else if(tick - current >= slots.length()){
+            overflow.computeIfAbsent(tick, t -> new AtomicLong()).incrementAndGet();
+        }
+        else{
+            slots.incrementAndGet(slot(tick));
+        }
+    }
+
+    /**
+     * Fa avanzare la ruota fino all'istante indicato.
+     *
+     * @param nowMillis l'istante corrente in epoch millis
+     * @return il numero di scadenze registrate per i tick trascorsi dall'ultimo avanzamento
+     */
+    public synchronized long advance(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        long due = overdue.getAndSet(0);
+        long from = currentTick + 1;
+        // Oltre un giro completo ogni slot va svuotato una sola volta
+        long to = Math.min(target, currentTick + slots.length());
+        for(long tick = from; tick <= to; tick++){
+            due += slots.getAndSet(slot(tick), 0);
+        }
+        if(target > currentTick){
+            currentTick = target;
+        }
+        // Sposta nella ruota le scadenze oltre l'orizzonte che ora vi rientrano, o che sono già scadute
+        ConcurrentNavigableMap<Long, AtomicLong> reachable = overflow.headMap(target + slots.length(), false);
+        for(Map.Entry<Long, AtomicLong> entry : reachable.entrySet()){
+            long count = entry.getValue().getAndSet(0);
+            reachable.remove(entry.getKey());
+            if(entry.getKey() <= target){
+                due += count;
+            }
+            else{
+                slots.addAndGet(slot(entry.getKey()), count);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Restituisce il numero di scadenze registrate e non ancora restituite da {@link #advance(long)}.
+     *
+     * @return il numero di scadenze in attesa
+     */
+    public long pending() {
+        long total = overdue.get();
+        for(int i = 0; i < slots.length(); i++){
+            total += slots.get(i);
+        }
+        for(AtomicLong count : overflow.values()){
+            total += count.get();
+        }
+        return total;
+    }
+
+    private int slot(long tick) {
+        return (int) Math.floorMod(tick, (long) slots.length());
+    }
+}
@@ -0,0 +1,15 @@
+-- Outbox delle email: i messaggi vengono scritti nella transazione che li genera
+-- e inviati in background da EmailOutboxDispatcher.
+create table if not exists email_outbox (
+    id              bigint       not null auto_increment primary key,
+    recipient       varchar(255) not null,
+    subject         varchar(255) not null,
+    body            text         not null,
+    status          varchar(16)  not null,
+    attempts        int          not null default 0,
+    next_attempt_at datetime(6)  not null,
+    last_error      varchar(255),
+    created_at      datetime(6)  not null,
+    sent_at         datetime(6),
+    index idx_email_outbox_due (status, next_attempt_at)
+);
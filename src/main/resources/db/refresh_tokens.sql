@@ -0,0 +1,14 @@
+-- Refresh token: solo l'hash SHA-256 del token, cercato tramite indice univoco.
+-- family raggruppa i token ottenuti con la rotazione, per revocarli tutti in caso di riuso.
+create table refresh_tokens (
+    id bigint not null auto_increment primary key,
+    token_hash binary(32) not null,
+    family binary(16) not null,
+    id_user bigint not null,
+    expires_at datetime(6) not null,
+    used bit not null default 0
+);
+create unique index uk_refresh_tokens_hash on refresh_tokens (token_hash);
+create index idx_refresh_tokens_family on refresh_tokens (family);
+create index idx_refresh_tokens_user on refresh_tokens (id_user);
+create index idx_refresh_tokens_expiry on refresh_tokens (expires_at);
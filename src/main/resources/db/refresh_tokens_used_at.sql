@@ -0,0 +1,2 @@
+-- Istante della rotazione, per distinguere le richieste concorrenti dal riuso di un token rubato (RefreshTokenService).
+alter table refresh_tokens add column used_at datetime(6) null;
@@ -0,0 +1,11 @@
+-- Revoche dei token JWT (logout, cambio password, cancellazione account).
+-- jti e' l'UUID del token in 16 byte; se NULL la revoca riguarda tutti i token di id_user emessi prima di revoked_at.
+-- Le righe vengono cancellate da TokenRevocationService quando i token interessati sono scaduti.
+create table token_revocations (
+    id bigint not null auto_increment primary key,
+    jti binary(16) null,
+    id_user bigint null,
+    revoked_at datetime(6) not null,
+    expires_at datetime(6) not null
+);
+create index idx_token_revocations_expiry on token_revocations (expires_at);
@@ -0,0 +1,2 @@
+-- Indice per la lettura periodica delle revoche recenti (finestra su revoked_at) da parte di TokenRevocationService.
+create index idx_token_revocations_revoked on token_revocations (revoked_at);
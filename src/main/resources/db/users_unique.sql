@@ -0,0 +1,5 @@
+-- Vincoli univoci su email e username: la registrazione si affida a questi vincoli
+-- invece di verificare l'esistenza con query separate (vedi LoginRegisterService).
+alter table users
+    add constraint uk_users_email unique (email),
+    add constraint uk_users_username unique (username);
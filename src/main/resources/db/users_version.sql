@@ -0,0 +1,4 @@
+-- Versione dell'utente, incrementata a ogni modifica: da essa derivano gli ETag di /api/users
+-- e il controllo di concorrenza ottimistico degli aggiornamenti (vedi User.version).
+alter table users
+    add column version bigint not null default 0;
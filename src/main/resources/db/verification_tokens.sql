@@ -0,0 +1,4 @@
+-- Indici dei token di verifica: lookup per token e purge dei token scaduti
+-- (VerificationTokenSweeper) senza scansioni complete della tabella.
+create index idx_verification_tokens_token on verification_tokens (token);
+create index idx_verification_tokens_expiry on verification_tokens (expiry_date);
@@ -0,0 +1,126 @@
+package springboot.belzedev.it.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Due database H2 embedded fanno da primario e da replica: ognuno risponde con il proprio nome.
+ */
+class ReadWriteRoutingDataSourceTests {
+
+	private EmbeddedDatabase primary;
+	private EmbeddedDatabase replica;
+	private ReadWriteRoutingDataSource routing;
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate readWrite;
+	private TransactionTemplate readOnly;
+
+	@BeforeEach
+	void setUp() {
+		primary = database("primary");
+		replica = database("replica");
+		routing = new ReadWriteRoutingDataSource(primary, List.of(replica), Duration.ofSeconds(5));
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+		readWrite = new TransactionTemplate(transactionManager);
+		readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		// Query vuota: la replica embedded è considerata allineata se risponde
+		new ReplicaLagMonitor(routing, "", new SimpleMeterRegistry()).check();
+	}
+
+	@AfterEach
+	void tearDown() {
+		primary.shutdown();
+		replica.shutdown();
+	}
+
+	@Test
+	void writeTransactionsUsePrimary() {
+		assertThat(readWrite.execute(status -> node())).isEqualTo("primary");
+	}
+
+	@Test
+	void readOnlyTransactionsUseReplica() {
+		assertThat(readOnly.execute(status -> node())).isEqualTo("replica");
+	}
+
+	@Test
+	void replicaBeyondDefaultLagFallsBackToPrimary() {
+		routing.updateLag(0, Duration.ofSeconds(10).toMillis());
+
+		assertThat(readOnly.execute(status -> node())).isEqualTo("primary");
+	}
+
+	@Test
+	void labelledTransactionToleratesLargerLag() {
+		routing.updateLag(0, Duration.ofSeconds(10).toMillis());
+		DefaultTransactionAttribute attribute = new DefaultTransactionAttribute();
+		attribute.setLabels(List.of(ReplicaRouting.MAX_LAG_LABEL + "30s"));
+
+		ReplicaRouting.begin(attribute);
+		try{
+			assertThat(readOnly.execute(status -> node())).isEqualTo("replica");
+		}
+		finally{
+			ReplicaRouting.end();
+		}
+		assertThat(ReplicaRouting.currentMaxLag()).isNull();
+	}
+
+	@Test
+	void pinnedReadsUsePrimary() {
+		assertThat(ReplicaRouting.onPrimary(() -> readOnly.execute(status -> node()))).isEqualTo("primary");
+		assertThat(ReplicaRouting.isPinnedToPrimary()).isFalse();
+	}
+
+	@Test
+	void lagIsReadFromReplicaStatus() {
+		JdbcTemplate replicaJdbc = new JdbcTemplate(replica);
+		replicaJdbc.execute("create table replica_status(Seconds_Behind_Source bigint)");
+		replicaJdbc.update("insert into replica_status values (2)");
+
+		new ReplicaLagMonitor(routing, "select * from replica_status", new SimpleMeterRegistry()).check();
+
+		assertThat(routing.getLag(0)).isEqualTo(2_000);
+	}
+
+	@Test
+	void replicaWithFailingStatusQueryIsSkipped() {
+		new ReplicaLagMonitor(routing, "select * from missing_status", new SimpleMeterRegistry()).check();
+
+		assertThat(routing.getLag(0)).isEqualTo(Long.MAX_VALUE);
+		assertThat(readOnly.execute(status -> node())).isEqualTo("primary");
+	}
+
+	private String node() {
+		return jdbcTemplate.queryForObject("select name from node", String.class);
+	}
+
+	private static EmbeddedDatabase database(String name) {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.setName(name + "-" + System.nanoTime())
+				.build();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("create table node(name varchar(16))");
+		jdbcTemplate.update("insert into node(name) values (?)", name);
+		return database;
+	}
+}
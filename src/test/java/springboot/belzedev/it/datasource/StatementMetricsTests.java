@@ -0,0 +1,84 @@
+package springboot.belzedev.it.datasource;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatementMetricsTests {
+
+	private SimpleMeterRegistry registry;
+	private StatementMetrics metrics;
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void setUp() {
+		registry = new SimpleMeterRegistry();
+		metrics = new StatementMetrics(registry, Duration.ofSeconds(10), 0, 3);
+		database = new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true)
+				.build();
+		InstrumentedDataSource dataSource = new InstrumentedDataSource(database);
+		dataSource.setMetrics(metrics);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table users(id_user bigint primary key, username varchar(50))");
+	}
+
+	@AfterEach
+	void tearDown() {
+		database.shutdown();
+	}
+
+	@Test
+	void normalizeRemovesLiteralsAndCollapsesInLists() {
+		assertThat(metrics.normalize("select *\n  from users where id_user in (1, 2, 3) and username = 'o''neil'"))
+				.isEqualTo("select * from users where id_user in (?) and username = ?");
+		assertThat(metrics.normalize("select u1_0.id_user from users u1_0 where u1_0.id_user in (?,?,?)"))
+				.isEqualTo("select u1_0.id_user from users u1_0 where u1_0.id_user in (?)");
+	}
+
+	@Test
+	void redactHidesStringsButKeepsNumbersAndDates() {
+		assertThat(StatementMetrics.redact(new Object[]{42L, "$2a$10$hash", null, true, LocalDate.of(2024, 1, 2), new byte[3]}))
+				.isEqualTo("[42, <string:11>, null, true, 2024-01-02, <bytes:3>]");
+		assertThat(StatementMetrics.redact(null)).isEqualTo("[]");
+	}
+
+	@Test
+	void preparedStatementsAreTimedByNormalizedSql() {
+		jdbcTemplate.update("insert into users(id_user, username) values (?, ?)", 1L, "alice");
+		jdbcTemplate.update("insert into users(id_user, username) values (?, ?)", 2L, "bob");
+		jdbcTemplate.batchUpdate("insert into users(id_user, username) values (?, ?)",
+				List.of(new Object[]{3L, "carol"}, new Object[]{4L, "dave"}));
+
+		Timer timer = registry.get("db.statement")
+				.tag("sql", "insert into users(id_user, username) values (?, ?)")
+				.tag("origin", RepositoryOrigin.NONE)
+				.timer();
+		assertThat(timer.count()).isEqualTo(3);
+	}
+
+	@Test
+	void seriesBeyondTheLimitAreGroupedAsOther() {
+		for(int i = 0; i < 5; i++){
+			jdbcTemplate.queryForList("select id_user from users where id_user > ? and " + i + "0 = " + i + "0", 0L);
+			jdbcTemplate.queryForList("select username as c" + i + " from users");
+		}
+
+		assertThat(registry.get("db.statement").timers()).hasSizeLessThanOrEqualTo(4);
+		assertThat(registry.get("db.statement").tag("sql", "other").timer().count()).isPositive();
+	}
+}
@@ -0,0 +1,116 @@
+package springboot.belzedev.it.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import springboot.belzedev.it.datasource.InstrumentedDataSource;
+import springboot.belzedev.it.datasource.StatementMetrics;
+import springboot.belzedev.it.dto.UserPreferences;
+import springboot.belzedev.it.models.User;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserUpdateRepositoryImplTests {
+
+	private SimpleMeterRegistry registry;
+	private EmbeddedDatabase database;
+	private JdbcTemplate rawJdbcTemplate;
+	private Cache cache;
+	private UserUpdateRepositoryImpl repository;
+
+	@BeforeEach
+	void setUp() {
+		registry = new SimpleMeterRegistry();
+		database = new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true)
+				.build();
+		rawJdbcTemplate = new JdbcTemplate(database);
+		rawJdbcTemplate.execute("create table users(id_user bigint primary key, email varchar(100), username varchar(50), "
+				+ "psw varchar(100), verified boolean, theme boolean, lang varchar(20), version bigint)");
+		rawJdbcTemplate.update("insert into users values (1, 'a@example.com', 'alice', '$2a$10$hash', false, false, 'en', 3)");
+
+		// Le istruzioni eseguite dal repository vengono registrate con la loro SQL normalizzata
+		InstrumentedDataSource dataSource = new InstrumentedDataSource(database);
+		dataSource.setMetrics(new StatementMetrics(registry, Duration.ofSeconds(10), 0, 100));
+		cache = mock(Cache.class);
+		EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+		when(entityManagerFactory.getCache()).thenReturn(cache);
+		repository = new UserUpdateRepositoryImpl(new JdbcTemplate(dataSource), entityManagerFactory);
+	}
+
+	@AfterEach
+	void tearDown() {
+		database.shutdown();
+	}
+
+	private List<String> executedStatements() {
+		return registry.get("db.statement").timers().stream()
+				.map(timer -> timer.getId().getTag("sql"))
+				.toList();
+	}
+
+	@Test
+	void updatePreferencesIssuesASingleUpdateOfTheGivenColumns() {
+		int updated = repository.updatePreferences(1L, new UserPreferences(true, null), 3L);
+
+		assertThat(updated).isEqualTo(1);
+		assertThat(executedStatements()).containsExactly("update users set theme = ?, version = version + ? where id_user = ? and version = ?");
+		Map<String, Object> row = rawJdbcTemplate.queryForMap("select theme, lang, psw, version from users where id_user = 1");
+		assertThat(row).containsEntry("THEME", true).containsEntry("LANG", "en")
+				.containsEntry("PSW", "$2a$10$hash").containsEntry("VERSION", 4L);
+		verify(cache).evict(User.class, 1L);
+	}
+
+	@Test
+	void updatePreferencesWithAStaleVersionChangesNothing() {
+		int updated = repository.updatePreferences(1L, new UserPreferences(null, "it"), 2L);
+
+		assertThat(updated).isZero();
+		assertThat(executedStatements()).noneMatch(sql -> sql.startsWith("select"));
+		assertThat(rawJdbcTemplate.queryForObject("select lang from users where id_user = 1", String.class)).isEqualTo("en");
+		verify(cache, never()).evict(User.class, 1L);
+	}
+
+	@Test
+	void updatePreferencesNeverReadsTheUserNorWritesThePassword() {
+		repository.updatePreferences(1L, new UserPreferences(false, "it"), null);
+
+		assertThat(executedStatements()).containsExactly("update users set theme = ?, lang = ?, version = version + ? where id_user = ?");
+		assertThat(executedStatements()).noneMatch(sql -> sql.startsWith("select") || sql.contains("psw"));
+	}
+
+	@Test
+	void markVerifiedIsASingleConditionalUpdate() {
+		assertThat(repository.markVerified(1L)).isEqualTo(1);
+		assertThat(repository.markVerified(1L)).isZero();
+
+		assertThat(executedStatements()).containsExactly("update users set verified = true, version = version + ? where id_user = ? and verified = false");
+		assertThat(rawJdbcTemplate.queryForObject("select version from users where id_user = 1", Long.class)).isEqualTo(4L);
+		verify(cache).evict(User.class, 1L);
+	}
+
+	@Test
+	void updatePasswordOnlyWritesTheHash() {
+		assertThat(repository.updatePassword(1L, "$2a$12$rehashed")).isEqualTo(1);
+
+		assertThat(executedStatements()).containsExactly("update users set psw = ?, version = version + ? where id_user = ?");
+		assertThat(rawJdbcTemplate.queryForObject("select psw from users where id_user = 1", String.class)).isEqualTo("$2a$12$rehashed");
+		verify(cache).evict(User.class, 1L);
+	}
+}
@@ -0,0 +1,92 @@
+package springboot.belzedev.it.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtKeyringTests {
+
+	private static final Duration ROTATION = Duration.ofHours(24);
+	private static final Duration OVERLAP = Duration.ofHours(10);
+
+	@TempDir
+	Path directory;
+
+	private final AtomicLong clock = new AtomicLong(Duration.ofDays(20_000).toMillis());
+
+	private JwtKeyring keyring() {
+		return new JwtKeyring(directory.resolve("keyring.txt"), ROTATION, OVERLAP, clock::get);
+	}
+
+	@Test
+	void instancesSharingTheFileUseTheSameKeys() {
+		JwtKeyring first = keyring();
+		JwtKeyring second = keyring();
+
+		String kid = first.current().kid();
+
+		assertThat(second.current().kid()).isEqualTo(kid);
+		assertThat(second.find(kid)).isEqualTo(first.find(kid));
+	}
+
+	@Test
+	void rotationKeepsThePreviousKeyDuringTheOverlap() {
+		JwtKeyring keyring = keyring();
+		String oldKid = keyring.current().kid();
+
+		clock.addAndGet(ROTATION.toMillis());
+		keyring.refresh();
+		String newKid = keyring.current().kid();
+
+		assertThat(newKid).isNotEqualTo(oldKid);
+		assertThat(keyring.find(oldKid)).isNotNull();
+		assertThat(keyring.find(newKid)).isNotNull();
+	}
+
+	@Test
+	void previousKeyIsRetiredAfterTheOverlap() {
+		JwtKeyring keyring = keyring();
+		String oldKid = keyring.current().kid();
+		clock.addAndGet(ROTATION.toMillis());
+		keyring.refresh();
+
+		clock.addAndGet(OVERLAP.toMillis());
+		clock.addAndGet(ROTATION.toMillis());
+		keyring.refresh();
+
+		assertThat(keyring.find(oldKid)).isNull();
+	}
+
+	@Test
+	void keyRotatedByAnotherInstanceIsPickedUpOnDemand() {
+		JwtKeyring first = keyring();
+		JwtKeyring second = keyring();
+
+		clock.addAndGet(ROTATION.toMillis());
+		first.refresh();
+
+		assertThat(second.find(first.current().kid())).isNotNull();
+	}
+
+	@Test
+	void unknownKidIsRejected() {
+		assertThat(keyring().find("missing")).isNull();
+		assertThat(keyring().find(null)).isNull();
+	}
+
+	@Test
+	void overlapCoversTheTokenTtlPlusTheCheckInterval() {
+		Duration ttl = Duration.ofMinutes(15);
+
+		assertThat(JwtKeyring.effectiveOverlap(Duration.ZERO, ttl, 60_000)).isEqualTo(Duration.ofMinutes(16));
+		assertThat(JwtKeyring.effectiveOverlap(Duration.ofHours(1), ttl, 60_000)).isEqualTo(Duration.ofHours(1));
+		assertThatThrownBy(() -> JwtKeyring.effectiveOverlap(ttl, ttl, 60_000))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
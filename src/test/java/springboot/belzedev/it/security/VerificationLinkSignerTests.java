@@ -0,0 +1,61 @@
+package springboot.belzedev.it.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VerificationLinkSignerTests {
+
+	private static final String SECRET = Base64.getEncoder().encodeToString(new byte[32]);
+
+	@Test
+	void verifiesItsOwnLinks() {
+		VerificationLinkSigner signer = new VerificationLinkSigner("stateless", SECRET, Duration.ofHours(1));
+
+		String token = signer.sign(42L);
+
+		assertThat(VerificationLinkSigner.isSigned(token)).isTrue();
+		assertThat(signer.verify(token)).isEqualTo(42L);
+	}
+
+	@Test
+	void rejectsTamperedPayload() {
+		VerificationLinkSigner signer = new VerificationLinkSigner("stateless", SECRET, Duration.ofHours(1));
+		String token = signer.sign(42L);
+		String forgedPayload = Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(("43:" + Long.MAX_VALUE).getBytes());
+
+		assertThat(signer.verify(forgedPayload + token.substring(token.indexOf('.')))).isNull();
+		assertThat(signer.verify("not-a-token.###")).isNull();
+	}
+
+	@Test
+	void rejectsLinksSignedWithAnotherKey() {
+		VerificationLinkSigner signer = new VerificationLinkSigner("stateless", SECRET, Duration.ofHours(1));
+		VerificationLinkSigner other = new VerificationLinkSigner("token", "", Duration.ofHours(1));
+
+		assertThat(other.verify(signer.sign(42L))).isNull();
+	}
+
+	@Test
+	void rejectsExpiredLinks() {
+		VerificationLinkSigner signer = new VerificationLinkSigner("stateless", SECRET, Duration.ofSeconds(-1));
+
+		assertThat(signer.verify(signer.sign(42L))).isNull();
+	}
+
+	@Test
+	void requiresSecretInStatelessMode() {
+		assertThatThrownBy(() -> new VerificationLinkSigner("stateless", " ", Duration.ofHours(1)))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void leavesDatabaseTokensToTheRepository() {
+		assertThat(VerificationLinkSigner.isSigned("3f2a1c1e-8d6b-4a57-9d43-1f0b6c2e7a11")).isFalse();
+	}
+}
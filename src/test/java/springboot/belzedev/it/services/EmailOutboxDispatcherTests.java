@@ -0,0 +1,96 @@
+package springboot.belzedev.it.services;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springboot.belzedev.it.enums.OutboxStatus;
+import springboot.belzedev.it.models.EmailOutbox;
+import springboot.belzedev.it.repository.EmailOutboxRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmailOutboxDispatcherTests {
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	private EmailOutboxRepository outboxRepository;
+	private JavaMailSenderImpl mailSender;
+
+	@BeforeEach
+	void setUp() {
+		outboxRepository = mock(EmailOutboxRepository.class);
+		mailSender = new JavaMailSenderImpl();
+		mailSender.setHost("localhost");
+		mailSender.setPort(ServerSetupTest.SMTP.getPort());
+	}
+
+	private EmailOutboxDispatcher dispatcher() {
+		return new EmailOutboxDispatcher(outboxRepository, new EmailService(outboxRepository), mailSender,
+				new TransactionTemplate(mock(PlatformTransactionManager.class)),
+				50, 3, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofSeconds(10), Duration.ofMinutes(1),
+				5000, 10000, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void sendsPendingBatchAndMarksItSent() throws Exception {
+		EmailOutbox first = new EmailOutbox("first@example.com", "Verify", "link-1");
+		EmailOutbox second = new EmailOutbox("second@example.com", "Verify", "link-2");
+		when(outboxRepository.findDue(any(LocalDateTime.class), any(Pageable.class)))
+				.thenReturn(List.of(first, second), List.of());
+
+		dispatcher().dispatch();
+
+		MimeMessage[] received = greenMail.getReceivedMessages();
+		assertThat(received).hasSize(2);
+		assertThat(received[0].getAllRecipients()[0].toString()).isEqualTo("first@example.com");
+		assertThat(first.getStatus()).isEqualTo(OutboxStatus.SENT);
+		assertThat(second.getStatus()).isEqualTo(OutboxStatus.SENT);
+		assertThat(first.getSentAt()).isNotNull();
+	}
+
+	@Test
+	void schedulesRetryWithBackoffWhenServerIsUnreachable() {
+		mailSender.setPort(1);
+		EmailOutbox message = new EmailOutbox("user@example.com", "Verify", "link");
+		when(outboxRepository.findDue(any(LocalDateTime.class), any(Pageable.class)))
+				.thenReturn(List.of(message), List.of());
+
+		LocalDateTime before = LocalDateTime.now();
+		dispatcher().dispatch();
+
+		assertThat(message.getStatus()).isEqualTo(OutboxStatus.PENDING);
+		assertThat(message.getAttempts()).isEqualTo(1);
+		assertThat(message.getNextAttemptAt()).isAfterOrEqualTo(before.plusSeconds(30));
+		assertThat(message.getLastError()).isNotBlank();
+	}
+
+	@Test
+	void marksMessageFailedAfterLastAttempt() {
+		mailSender.setPort(1);
+		EmailOutbox message = new EmailOutbox("user@example.com", "Verify", "link");
+		message.setAttempts(2);
+		when(outboxRepository.findDue(any(LocalDateTime.class), any(Pageable.class)))
+				.thenReturn(List.of(message), List.of());
+
+		dispatcher().dispatch();
+
+		assertThat(message.getStatus()).isEqualTo(OutboxStatus.FAILED);
+		assertThat(message.getAttempts()).isEqualTo(3);
+	}
+}
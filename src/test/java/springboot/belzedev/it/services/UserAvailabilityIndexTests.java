@@ -0,0 +1,77 @@
+package springboot.belzedev.it.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import springboot.belzedev.it.dto.UserSummary;
+import springboot.belzedev.it.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserAvailabilityIndexTests {
+
+	private static final Duration OVERLAP = Duration.ofMinutes(2);
+
+	private UserRepository userRepository;
+	private long now;
+	private UserAvailabilityIndex index;
+
+	@BeforeEach
+	void setUp() {
+		userRepository = mock(UserRepository.class);
+		when(userRepository.streamAll()).thenAnswer(invocation -> Stream.of(summary(1L, "alice")));
+		when(userRepository.existsByUsername("bob")).thenReturn(true);
+		when(userRepository.existsByUsername("carol")).thenReturn(true);
+		index = new UserAvailabilityIndex(userRepository, mock(PlatformTransactionManager.class), 1000, 0.001,
+				OVERLAP, new SimpleMeterRegistry(), () -> now);
+		index.rebuild();
+	}
+
+	@Test
+	void userInsertedOnAnotherNodeBecomesUnavailableAfterTheSync() {
+		// "bob" viene salvato da un altro nodo: l'indice locale non ha ricevuto add()
+		assertThat(index.isUsernameAvailable("bob")).isTrue();
+		when(userRepository.findPageAfter(eq(1L), any())).thenReturn(List.of(summary(2L, "bob")));
+
+		now += 5_000;
+		index.syncNewUsers();
+
+		assertThat(index.isUsernameAvailable("bob")).isFalse();
+		assertThat(index.isEmailAvailable("bob@example.com")).isFalse();
+		assertThat(index.isUsernameAvailable("dave")).isTrue();
+	}
+
+	@Test
+	void idsCommittedOutOfOrderAreReadWithinTheOverlap() {
+		// L'ID 3 viene confermato prima del 2, ancora in transazione alla prima lettura
+		when(userRepository.findPageAfter(eq(1L), any())).thenReturn(List.of(summary(3L, "bob")));
+		now += 5_000;
+		index.syncNewUsers();
+
+		when(userRepository.findPageAfter(eq(1L), any())).thenReturn(List.of(summary(2L, "carol"), summary(3L, "bob")));
+		now += 5_000;
+		index.syncNewUsers();
+
+		assertThat(index.isUsernameAvailable("carol")).isFalse();
+
+		// Trascorsa la finestra, la lettura riparte dall'ID più alto già visto
+		now += OVERLAP.toMillis() + 60_000;
+		index.syncNewUsers();
+
+		verify(userRepository).findPageAfter(eq(3L), any());
+	}
+
+	private static UserSummary summary(Long id, String username) {
+		return new UserSummary(id, username + "@example.com", username, true, false, "en", 0);
+	}
+}
@@ -0,0 +1,90 @@
+package springboot.belzedev.it.services;
+
+import org.junit.jupiter.api.Test;
+import springboot.belzedev.it.dto.UserPage;
+import springboot.belzedev.it.dto.UserSummary;
+import springboot.belzedev.it.models.User;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserVersionIndexTests {
+
+	private final UserVersionIndex index = new UserVersionIndex(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+	@Test
+	void userETagIsKnownOnlyAfterTheUserHasBeenRead() {
+		assertThat(index.getUserETag(1L)).isNull();
+
+		String etag = index.recordUser(user(1L, 3));
+
+		assertThat(etag).isEqualTo("\"1-3\"");
+		assertThat(index.getUserETag(1L)).isEqualTo(etag);
+	}
+
+	@Test
+	void changingAUserForgetsItsETagAndEveryPage() {
+		index.recordUser(user(1L, 3));
+		index.recordPage(0, 50, page(List.of(summary(1L, 3)), null));
+
+		index.userChanged(1L);
+
+		assertThat(index.getUserETag(1L)).isNull();
+		assertThat(index.getPageETag(0, 50)).isNull();
+	}
+
+	@Test
+	void addingUsersForgetsPagesButNotUsers() {
+		index.recordUser(user(1L, 3));
+		index.recordPage(0, 50, page(List.of(summary(1L, 3)), null));
+
+		index.usersAdded();
+
+		assertThat(index.getUserETag(1L)).isNotNull();
+		assertThat(index.getPageETag(0, 50)).isNull();
+	}
+
+	@Test
+	void pageETagChangesWithVersionsAndCursor() {
+		String etag = UserVersionIndex.etag(page(List.of(summary(1L, 3), summary(2L, 0)), 2L));
+
+		assertThat(UserVersionIndex.etag(page(List.of(summary(1L, 3), summary(2L, 0)), 2L))).isEqualTo(etag);
+		assertThat(UserVersionIndex.etag(page(List.of(summary(1L, 4), summary(2L, 0)), 2L))).isNotEqualTo(etag);
+		assertThat(UserVersionIndex.etag(page(List.of(summary(1L, 3), summary(2L, 0)), null))).isNotEqualTo(etag);
+	}
+
+	@Test
+	void pagesAreKeyedByCursorAndSize() {
+		index.recordPage(0, 50, page(List.of(summary(1L, 3)), null));
+
+		assertThat(index.getPageETag(0, 50)).isNotNull();
+		assertThat(index.getPageETag(0, 20)).isNull();
+		assertThat(index.getPageETag(1, 50)).isNull();
+	}
+
+	@Test
+	void versionIsReadBackOnlyFromAStrongETagOfTheSameUser() {
+		assertThat(UserVersionIndex.versionOf("\"7-12\"", 7L)).isEqualTo(12L);
+		assertThat(UserVersionIndex.versionOf(" \"7-12\" ", 7L)).isEqualTo(12L);
+		assertThat(UserVersionIndex.versionOf("W/\"7-12\"", 7L)).isNull();
+		assertThat(UserVersionIndex.versionOf("\"8-12\"", 7L)).isNull();
+		assertThat(UserVersionIndex.versionOf("\"7-\"", 7L)).isNull();
+		assertThat(UserVersionIndex.versionOf("\"7-x\"", 7L)).isNull();
+	}
+
+	private static User user(Long id, long version) {
+		User user = new User(id, "user" + id + "@example.com", "user" + id, "hash", true, false, "en");
+		user.setVersion(version);
+		return user;
+	}
+
+	private static UserSummary summary(Long id, long version) {
+		return new UserSummary(id, "user" + id + "@example.com", "user" + id, true, false, "en", version);
+	}
+
+	private static UserPage page(List<UserSummary> items, Long nextCursor) {
+		return new UserPage(items, nextCursor);
+	}
+}
@@ -0,0 +1,43 @@
+package springboot.belzedev.it.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTests {
+
+	@Test
+	void neverReturnsFalseNegatives() {
+		BloomFilter filter = BloomFilter.create(10_000, 0.01);
+		for(int i = 0; i < 10_000; i++){
+			filter.put("user" + i);
+		}
+
+		for(int i = 0; i < 10_000; i++){
+			assertThat(filter.mightContain("user" + i)).isTrue();
+		}
+	}
+
+	@Test
+	void keepsFalsePositivesNearTheConfiguredRate() {
+		BloomFilter filter = BloomFilter.create(10_000, 0.01);
+		for(int i = 0; i < 10_000; i++){
+			filter.put("user" + i);
+		}
+
+		int falsePositives = 0;
+		for(int i = 0; i < 100_000; i++){
+			if(filter.mightContain("other" + i)){
+				falsePositives++;
+			}
+		}
+		assertThat(falsePositives).isLessThan(2_000);
+	}
+
+	@Test
+	void rejectsInvalidSizing() {
+		assertThatThrownBy(() -> BloomFilter.create(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> BloomFilter.create(100, 1.0)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,25 @@
+package springboot.belzedev.it.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailValidatorTests {
+
+	// Regex originale: il validatore deve dare sempre lo stesso esito
+	private static final Pattern REFERENCE = Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$");
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"player.one@example.com", "a@b.co", "x+tag@sub.domain.org", "a_b%c-d@host-name.it",
+			"", "@example.com", "player@", "player@.com", "player@example", "player@example.c",
+			"player@example.c0m", "player@exa_mple.com", "player@@example.com", "pla yer@example.com",
+			"player@example.com.", "player@-.io", "player@..io", "giocatore@esempio.ità", "a@b.c.de1"
+	})
+	void matchesTheReferenceRegex(String email) {
+		assertThat(EmailValidator.isValid(email)).isEqualTo(REFERENCE.matcher(email).matches());
+	}
+}
@@ -0,0 +1,53 @@
+package springboot.belzedev.it.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiringCacheTests {
+
+	private static final long HOUR = 3_600_000;
+
+	@Test
+	void returnsValuesUntilTheirOwnExpiry() throws InterruptedException {
+		ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+		long now = System.currentTimeMillis();
+		cache.put("short", "a", now + 50);
+		cache.put("long", "b", now + HOUR);
+		cache.put("expired", "c", now - 1);
+
+		assertThat(cache.get("short")).isEqualTo("a");
+		assertThat(cache.get("expired")).isNull();
+		Thread.sleep(100);
+		assertThat(cache.get("short")).isNull();
+		assertThat(cache.get("long")).isEqualTo("b");
+		assertThat(cache.getHits()).isEqualTo(2);
+		assertThat(cache.getMisses()).isEqualTo(2);
+	}
+
+	@Test
+	void staysWithinTheMaximumSize() {
+		ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100);
+		long expiresAt = System.currentTimeMillis() + HOUR;
+		for(int i = 0; i < 10_000; i++){
+			cache.put(i, i, expiresAt);
+		}
+
+		assertThat(cache.size()).isLessThanOrEqualTo(100);
+		assertThat(cache.getEvictions()).isGreaterThanOrEqualTo(9_900);
+	}
+
+	@Test
+	void invalidatesByPredicate() {
+		ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100);
+		long expiresAt = System.currentTimeMillis() + HOUR;
+		for(int i = 0; i < 10; i++){
+			cache.put(i, i, expiresAt);
+		}
+
+		cache.invalidateIf(value -> value % 2 == 0);
+
+		assertThat(cache.get(2)).isNull();
+		assertThat(cache.get(3)).isEqualTo(3);
+	}
+}
@@ -0,0 +1,80 @@
+package springboot.belzedev.it.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTests {
+
+	private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+	private RateLimiter<String> limiter(int capacity, Duration refill) {
+		return new RateLimiter<>(capacity, refill, 1_000, clock::get);
+	}
+
+	@Test
+	void allowsBurstUpToCapacityThenRejects() {
+		RateLimiter<String> limiter = limiter(5, Duration.ofMinutes(5));
+
+		for(int i = 0; i < 5; i++){
+			assertThat(limiter.tryAcquire("alice")).isZero();
+		}
+		long wait = limiter.tryAcquire("alice");
+
+		assertThat(wait).isEqualTo(TimeUnit.MINUTES.toNanos(1));
+		assertThat(limiter.tryAcquire("bob")).isZero();
+	}
+
+	@Test
+	void refillsOneTokenPerInterval() {
+		RateLimiter<String> limiter = limiter(5, Duration.ofMinutes(5));
+		for(int i = 0; i < 5; i++){
+			limiter.tryAcquire("alice");
+		}
+
+		clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+		assertThat(limiter.tryAcquire("alice")).isZero();
+		assertThat(limiter.tryAcquire("alice")).isPositive();
+	}
+
+	@Test
+	void evictsOnlyBucketsThatAreFullAgain() {
+		RateLimiter<String> limiter = limiter(2, Duration.ofSeconds(10));
+		limiter.tryAcquire("idle");
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(6));
+		limiter.tryAcquire("busy");
+
+		assertThat(limiter.evictIdle()).isEqualTo(1);
+		assertThat(limiter.size()).isEqualTo(1);
+	}
+
+	@Test
+	void resetRestoresTheFullBurst() {
+		RateLimiter<String> limiter = limiter(1, Duration.ofMinutes(1));
+		limiter.tryAcquire("alice");
+		assertThat(limiter.tryAcquire("alice")).isPositive();
+
+		limiter.reset("alice");
+
+		assertThat(limiter.tryAcquire("alice")).isZero();
+	}
+
+	@Test
+	void rejectsNewKeysInsteadOfEvictingActiveBuckets() {
+		RateLimiter<String> limiter = new RateLimiter<>(1, Duration.ofMinutes(1), 2, clock::get);
+		limiter.tryAcquire("victim");
+		limiter.tryAcquire("spray-1");
+
+		assertThat(limiter.tryAcquire("spray-2")).isPositive();
+		assertThat(limiter.tryAcquire("victim")).isPositive();
+
+		clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+		assertThat(limiter.tryAcquire("spray-2")).isZero();
+	}
+}
@@ -0,0 +1,71 @@
+package springboot.belzedev.it.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RevocationListTests {
+
+	private static final long MINUTE = Duration.ofMinutes(1).toMillis();
+
+	private final long now = Duration.ofDays(20_000).toMillis();
+
+	private final RevocationList list = new RevocationList(MINUTE);
+
+	@Test
+	void revokedTokenIsFoundInItsExpiryBucket() {
+		list.revokeToken("a", now + 10 * MINUTE, now);
+
+		assertThat(list.isTokenRevoked("a", now + 10 * MINUTE)).isTrue();
+		assertThat(list.isTokenRevoked("b", now + 10 * MINUTE)).isFalse();
+		assertThat(list.isTokenRevoked("a", now + 20 * MINUTE)).isFalse();
+	}
+
+	@Test
+	void alreadyExpiredTokensAreNotStored() {
+		list.revokeToken("a", now - 1, now);
+
+		assertThat(list.tokenCount()).isZero();
+	}
+
+	@Test
+	void purgeDropsOnlyBucketsWhoseTokensHaveAllExpired() {
+		list.revokeToken("a", now + MINUTE / 2, now);
+		list.revokeToken("b", now + 5 * MINUTE, now);
+
+		list.purge(now + 2 * MINUTE);
+
+		assertThat(list.bucketCount()).isEqualTo(1);
+		assertThat(list.isTokenRevoked("a", now + MINUTE / 2)).isFalse();
+		assertThat(list.isTokenRevoked("b", now + 5 * MINUTE)).isTrue();
+	}
+
+	@Test
+	void userRevocationCoversTokensIssuedUpToTheCutoff() {
+		list.revokeUser(7, now, now + 60 * MINUTE);
+
+		assertThat(list.isUserRevoked(7, now - 1)).isTrue();
+		assertThat(list.isUserRevoked(7, now)).isTrue();
+		assertThat(list.isUserRevoked(7, now + 1)).isFalse();
+		assertThat(list.isUserRevoked(8, now - 1)).isFalse();
+	}
+
+	@Test
+	void laterUserRevocationWins() {
+		list.revokeUser(7, now + 100_000, now + 60 * MINUTE);
+		list.revokeUser(7, now, now + 60 * MINUTE);
+
+		assertThat(list.isUserRevoked(7, now + 50_000)).isTrue();
+	}
+
+	@Test
+	void purgeDropsExpiredUserRevocations() {
+		list.revokeUser(7, now, now + MINUTE);
+
+		list.purge(now + MINUTE);
+
+		assertThat(list.userCount()).isZero();
+	}
+}
@@ -0,0 +1,52 @@
+package springboot.belzedev.it.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTests {
+
+	private static final long TICK = 60_000;
+
+	@Test
+	void reportsExpiriesOnlyOnceTheirTickHasPassed() {
+		TimingWheel wheel = new TimingWheel(TICK, 8, 0);
+		wheel.schedule(2 * TICK + 1);
+		wheel.schedule(3 * TICK);
+
+		assertThat(wheel.advance(2 * TICK)).isZero();
+		assertThat(wheel.advance(3 * TICK)).isEqualTo(2);
+		assertThat(wheel.advance(4 * TICK)).isZero();
+		assertThat(wheel.pending()).isZero();
+	}
+
+	@Test
+	void keepsExpiriesBeyondTheHorizonUntilTheyAreDue() {
+		TimingWheel wheel = new TimingWheel(TICK, 4, 0);
+		wheel.schedule(10 * TICK);
+
+		assertThat(wheel.advance(4 * TICK)).isZero();
+		assertThat(wheel.advance(9 * TICK)).isZero();
+		assertThat(wheel.pending()).isEqualTo(1);
+		assertThat(wheel.advance(10 * TICK)).isEqualTo(1);
+	}
+
+	@Test
+	void returnsPastExpiriesOnTheNextAdvance() {
+		TimingWheel wheel = new TimingWheel(TICK, 4, 5 * TICK);
+		wheel.schedule(TICK);
+
+		assertThat(wheel.advance(5 * TICK)).isEqualTo(1);
+	}
+
+	@Test
+	void drainsEverySlotAfterALongPause() {
+		TimingWheel wheel = new TimingWheel(TICK, 4, 0);
+		for(int i = 1; i <= 4; i++){
+			wheel.schedule(i * TICK);
+		}
+
+		assertThat(wheel.advance(100 * TICK)).isEqualTo(4);
+		assertThat(wheel.pending()).isZero();
+	}
+}